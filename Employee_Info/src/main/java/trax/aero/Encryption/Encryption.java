@@ -4,9 +4,12 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
+import java.security.Provider;
 import java.security.Security;
 
 import javax.crypto.BadPaddingException;
@@ -22,6 +25,31 @@ public class Encryption {
 	
 	private static final String encryptionKey = "i/Mfi3u3jHFR0OSapCIdtA==";
 	
+	private static final String TRANSFORMATION = "AES/ECB/PKCS7Padding";
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	// Registered and looked up once, not on every call
+	private static final Provider PROVIDER;
+	private static final SecretKeySpec KEY = new SecretKeySpec(Base64.decodeBase64(encryptionKey.getBytes()), "AES");
+	
+	static
+	{
+		Provider bc = Security.getProvider("BC");
+		if (bc == null)
+		{
+			bc = new org.bouncycastle.jce.provider.BouncyCastleProvider();
+			Security.addProvider(bc);
+		}
+		PROVIDER = bc;
+	}
+	
+	private static Cipher cipher(int cipherMode) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException
+	{
+		Cipher cipher = Cipher.getInstance(TRANSFORMATION, PROVIDER);
+		cipher.init(cipherMode, KEY);
+		return cipher;
+	}
+	
 	/**
 	 * encrypt/decrypt a string using BouncyCastleProvider
 	 * 
@@ -42,8 +70,6 @@ public class Encryption {
 			NoSuchPaddingException, InvalidKeyException, ShortBufferException,
 			IllegalBlockSizeException, BadPaddingException
 	{
-		Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
-		byte[] keyBytes = null;
 		byte[] cipherText = null;
 		byte[] plainText = null;
 		int ctLength = 0;
@@ -54,13 +80,9 @@ public class Encryption {
 		str = str.trim();
 		if (str.length() > 0)
 		{
-			keyBytes = Base64.decodeBase64(encryptionKey.getBytes());
-			final SecretKeySpec key = new SecretKeySpec(keyBytes, "AES");
-			final Cipher cipher = Cipher.getInstance("AES/ECB/PKCS7Padding",
-					"BC");
 			if (encrypt)
 			{
-				cipher.init(Cipher.ENCRYPT_MODE, key);
+				final Cipher cipher = cipher(Cipher.ENCRYPT_MODE);
 				final byte[] input = str.getBytes();
 				cipherText = new byte[cipher.getOutputSize(input.length)];
 				ctLength = cipher.update(input, 0, input.length, cipherText, 0);
@@ -68,7 +90,7 @@ public class Encryption {
 				str = new String(Base64.encodeBase64(cipherText));
 			} else
 			{
-				cipher.init(Cipher.DECRYPT_MODE, key);
+				final Cipher cipher = cipher(Cipher.DECRYPT_MODE);
 				cipherText = Base64.decodeBase64(str.getBytes());
 				ctLength = cipherText.length;
 				plainText = new byte[cipher.getOutputSize(ctLength)];
@@ -95,32 +117,37 @@ public class Encryption {
 		doCrypto(Cipher.DECRYPT_MODE, inputFile, outputFile);
 	}
 
+	/**
+	 * Encrypts or decrypts a stream through fixed-size buffers, so memory use does
+	 * not depend on the size of the data. Neither stream is closed.
+	 * 
+	 * @param cipherMode Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE
+	 * @param in The data to transform
+	 * @param out Receives the result
+	 */
+	public static void crypto(int cipherMode, InputStream in, OutputStream out)
+			throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, ShortBufferException,
+			IllegalBlockSizeException, BadPaddingException, IOException {
+		Cipher cipher = cipher(cipherMode);
+		byte[] buffer = new byte[BUFFER_SIZE];
+		byte[] output = new byte[cipher.getOutputSize(BUFFER_SIZE)];
+		int n;
+		// read() may return fewer bytes than asked, every chunk is fed as it comes
+		while ((n = in.read(buffer)) != -1) {
+			out.write(output, 0, cipher.update(buffer, 0, n, output));
+		}
+		out.write(output, 0, cipher.doFinal(output, 0));
+	}
+
 	private static void doCrypto(int cipherMode, File inputFile,
 			File outputFile) throws NoSuchAlgorithmException, NoSuchProviderException,
 	NoSuchPaddingException, InvalidKeyException, ShortBufferException,
 	IllegalBlockSizeException, BadPaddingException, IOException {
 
-		Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
-		byte[] keyBytes = null;
-		
-		keyBytes = Base64.decodeBase64(encryptionKey.getBytes());
-		final SecretKeySpec key = new SecretKeySpec(keyBytes, "AES");
-		Cipher cipher = Cipher.getInstance("AES/ECB/PKCS7Padding",
-				"BC");
-		cipher.init(cipherMode, key);
-
-		FileInputStream inputStream = new FileInputStream(inputFile);
-		byte[] inputBytes = new byte[(int) inputFile.length()];
-		inputStream.read(inputBytes);
-
-		byte[] outputBytes = cipher.doFinal(inputBytes);
-
-		FileOutputStream outputStream = new FileOutputStream(outputFile);
-		outputStream.write(outputBytes);
-
-		inputStream.close();
-		outputStream.close();
-
+		try (InputStream inputStream = new FileInputStream(inputFile);
+				OutputStream outputStream = new FileOutputStream(outputFile)) {
+			crypto(cipherMode, inputStream, outputStream);
+		}
 	}
 
 }
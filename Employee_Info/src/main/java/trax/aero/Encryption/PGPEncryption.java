@@ -6,6 +6,7 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -63,19 +64,76 @@ public final class PGPEncryption {
 		 
 	        InputStream in = new BufferedInputStream(new FileInputStream(inputFileName));
 
-	        InputStream keyIn = new BufferedInputStream(new FileInputStream(keyFileName));
-	        decryptFile(in, keyIn, passwd, defaultFileName,folder);
-	        keyIn.close();
+	        decryptFile(in, keyFileName, passwd, defaultFileName,folder);
 	        in.close();
 	    }
 
+	    /**
+	     * Opens the decrypted content of an encrypted file as a stream, so it can be parsed
+	     * without the plaintext ever being written to disk.
+	     * 
+	     * The integrity check of the message, when it has one, runs when the returned
+	     * stream is closed after being read to the end.
+	     * 
+	     * @param inputFileName the encrypted file
+	     * @param keyFileName the secret key ring file
+	     * @param passwd passphrase of the secret key
+	     * @return the decrypted literal data, which closes the encrypted file when closed
+	     * @throws Exception if the file cannot be opened or decrypted
+	     */
+	    public static InputStream openDecryptedStream(
+	            String inputFileName,
+	            String keyFileName,
+	            char[] passwd)
+	            throws Exception
+	    {
+	        InputStream in = new BufferedInputStream(new FileInputStream(inputFileName));
+	        try
+	        {
+	            final DecryptedMessage message = openMessage(PGPUtil.getDecoderStream(in), keyFileName, passwd);
+	            final InputStream encrypted = in;
+
+	            return new FilterInputStream(message.literalData.getInputStream())
+	            {
+	                @Override
+	                public void close() throws IOException
+	                {
+	                    // A tampered or truncated file must not be reported as processed
+	                    try
+	                    {
+	                        verifyIntegrity(message.encryptedData);
+	                    }
+	                    catch (PGPException e)
+	                    {
+	                        throw new IOException("Could not decrypt file ERROR: " + e.toString(), e);
+	                    }
+	                    finally
+	                    {
+	                        encrypted.close();
+	                    }
+	                }
+	            };
+	        }
+	        catch (PGPException e)
+	        {
+	        	logger.severe(e.toString());
+	        	in.close();
+	        	throw new Exception("Could not decrypt file ERROR: "+e.toString());
+	        }
+	        catch (Exception e)
+	        {
+	            in.close();
+	            throw e;
+	        }
+	    }
+
 	    /**
 	     * decrypt the passed in message stream
 	     * @throws Exception 
 	     */
 	    private static void decryptFile(
 	            InputStream in,
-	            InputStream keyIn,
+	            String      keyFileName,
 	            char[]      passwd,
 	            String      defaultFileName,
 	            String folder)
@@ -85,129 +143,144 @@ public final class PGPEncryption {
 	        
 	        try
 	        {
-	            JcaPGPObjectFactory        pgpF = new JcaPGPObjectFactory(in);
-	            PGPEncryptedDataList    enc;
-
-	            Object                  o = pgpF.nextObject();
-	            //
-	            // the first object might be a PGP marker packet.
-	            //
-	            if (o instanceof PGPEncryptedDataList)
+	            DecryptedMessage message = openMessage(in, keyFileName, passwd);
+	            PGPLiteralData ld = message.literalData;
+
+	            String outFileName = ld.getFileName();
+	                	                
+	            if (outFileName.length() == 0)
 	            {
-	                enc = (PGPEncryptedDataList)o;
+	                outFileName = defaultFileName;
 	            }
-	            else
-	            {
-	                enc = (PGPEncryptedDataList)pgpF.nextObject();
+	                
+	                
+	            if(!outFileName.contains(".csv")) {
+	            	outFileName = outFileName + ".csv";
 	            }
+	            logger.info("Output file:" + outFileName);
+	            InputStream unc = ld.getInputStream();
+	            OutputStream fOut =  new BufferedOutputStream(new FileOutputStream(folder+File.separator + outFileName));
+	               
+	            Streams.pipeAll(unc, fOut);
+
+	            fOut.close();
+
+	            verifyIntegrity(message.encryptedData);
+	        }
+	        catch (PGPException e)
+	        {
+	        	logger.severe(e.toString());
+	        	in.close();
+	        	throw new Exception("Could not decrypt file ERROR: "+e.toString());
+	        }
+	    }
+
+	    /**
+	     * The literal data of a decrypted message, together with the encrypted packet it came from.
+	     */
+	    private static final class DecryptedMessage
+	    {
+	        final PGPPublicKeyEncryptedData encryptedData;
+	        final PGPLiteralData literalData;
+
+	        DecryptedMessage(PGPPublicKeyEncryptedData encryptedData, PGPLiteralData literalData)
+	        {
+	            this.encryptedData = encryptedData;
+	            this.literalData = literalData;
+	        }
+	    }
+
+	    /**
+	     * find the secret key of the passed in message stream and open its literal data
+	     * @throws Exception 
+	     */
+	    private static DecryptedMessage openMessage(
+	            InputStream in,
+	            String      keyFileName,
+	            char[]      passwd)
+	            throws Exception
+	    {
+	        JcaPGPObjectFactory        pgpF = new JcaPGPObjectFactory(in);
+	        PGPEncryptedDataList    enc;
+
+	        Object                  o = pgpF.nextObject();
+	        //
+	        // the first object might be a PGP marker packet.
+	        //
+	        if (o instanceof PGPEncryptedDataList)
+	        {
+	            enc = (PGPEncryptedDataList)o;
+	        }
+	        else
+	        {
+	            enc = (PGPEncryptedDataList)pgpF.nextObject();
+	        }
 	           
-	            Collection<PGPSecretKeyRing> colllection = new ArrayList<PGPSecretKeyRing>();
-	            PGPObjectFactory factory = new PGPObjectFactory(PGPUtil.getDecoderStream(keyIn), new JcaKeyFingerprintCalculator());
-	    		for (Iterator iter = factory.iterator(); iter.hasNext();) {
-	    			Object section = iter.next();
-	    			
-
-	    			if (section instanceof PGPSecretKeyRing) {
-	    				colllection.add((PGPSecretKeyRing) section);
-	    			}
-	    		}
-	           
-	            //
-	            // find the secret key
-	            //
-	            Iterator                    it = enc.getEncryptedDataObjects();
-	            
-	            PGPPrivateKey               sKey = null;
-	            PGPPublicKeyEncryptedData   pbe = null;
-	            
-	            PGPSecretKeyRingCollection  pgpSec = new PGPSecretKeyRingCollection(
-	            		colllection);
+	        //
+	        // find the secret key, the key ring is parsed and the key extracted once per key file
+	        //
+	        Iterator                    it = enc.getEncryptedDataObjects();
 	            
+	        PGPPrivateKey               sKey = null;
+	        PGPPublicKeyEncryptedData   pbe = null;
 	            
-	         
-	            
-	            
-	            while (sKey == null && it.hasNext())
-	            {
-	                pbe = (PGPPublicKeyEncryptedData)it.next();
-
-	                sKey = PGPUtils.findSecretKey(pgpSec, pbe.getKeyID(), passwd);
-	            }
+	        while (sKey == null && it.hasNext())
+	        {
+	            pbe = (PGPPublicKeyEncryptedData)it.next();
 
-	            if (sKey == null)
-	            {
-	                throw new IllegalArgumentException("secret key for message not found.");
-	            }
+	            sKey = PGPKeyCache.findPrivateKey(keyFileName, pbe.getKeyID(), passwd);
+	        }
 
-	            InputStream         clear = pbe.getDataStream(new JcePublicKeyDataDecryptorFactoryBuilder().setProvider("BC").build(sKey));
+	        if (sKey == null)
+	        {
+	            throw new IllegalArgumentException("secret key for message not found.");
+	        }
 
-	            JcaPGPObjectFactory    plainFact = new JcaPGPObjectFactory(clear);
+	        InputStream         clear = pbe.getDataStream(new JcePublicKeyDataDecryptorFactoryBuilder().setProvider("BC").build(sKey));
 
-	            PGPCompressedData   cData = (PGPCompressedData)plainFact.nextObject();
+	        JcaPGPObjectFactory    plainFact = new JcaPGPObjectFactory(clear);
 
-	            InputStream         compressedStream = new BufferedInputStream(cData.getDataStream());
-	            JcaPGPObjectFactory    pgpFact = new JcaPGPObjectFactory(compressedStream);
+	        PGPCompressedData   cData = (PGPCompressedData)plainFact.nextObject();
 
-	            Object              message = pgpFact.nextObject();
+	        InputStream         compressedStream = new BufferedInputStream(cData.getDataStream());
+	        JcaPGPObjectFactory    pgpFact = new JcaPGPObjectFactory(compressedStream);
 
-	            
-	            
-	            if (message instanceof PGPLiteralData)
-	            {
-	                PGPLiteralData ld = (PGPLiteralData)message;
+	        Object              message = pgpFact.nextObject();
 
-	                String outFileName = ld.getFileName();
-	                	                
-	                if (outFileName.length() == 0)
-	                {
-	                    outFileName = defaultFileName;
-	                }
-	                
-	                
-	                if(!outFileName.contains(".csv")) {
-	                	outFileName = outFileName + ".csv";
-	                }
-	                logger.info("Output file:" + outFileName);
-	                InputStream unc = ld.getInputStream();
-	                OutputStream fOut =  new BufferedOutputStream(new FileOutputStream(folder+File.separator + outFileName));
-	               
-	                              
-	                
-	                Streams.pipeAll(unc, fOut);
-
-	                fOut.close();
-	            }
-	            else if (message instanceof PGPOnePassSignatureList)
-	            {
-	                throw new PGPException("encrypted message contains a signed message - not literal data.");
-	            }
-	            else
-	            {
-	                throw new PGPException("message is not a simple encrypted file - type unknown.");
-	            }
+	        if (message instanceof PGPLiteralData)
+	        {
+	            return new DecryptedMessage(pbe, (PGPLiteralData)message);
+	        }
+	        else if (message instanceof PGPOnePassSignatureList)
+	        {
+	            throw new PGPException("encrypted message contains a signed message - not literal data.");
+	        }
+	        else
+	        {
+	            throw new PGPException("message is not a simple encrypted file - type unknown.");
+	        }
+	    }
 
-	            if (pbe.isIntegrityProtected())
+	    /**
+	     * log the result of the integrity check of a message whose literal data was read to the end
+	     */
+	    private static void verifyIntegrity(PGPPublicKeyEncryptedData pbe) throws PGPException, IOException
+	    {
+	        if (pbe.isIntegrityProtected())
+	        {
+	            if (!pbe.verify())
 	            {
-	                if (!pbe.verify())
-	                {
-	                	logger.severe("message failed integrity check");
-	                }
-	                else
-	                {
-	                	logger.info("message integrity check passed");
-	                }
+	            	logger.severe("message failed integrity check");
+	            	throw new PGPException("message failed integrity check");
 	            }
 	            else
 	            {
-	            	logger.info("no message integrity check");
+	            	logger.info("message integrity check passed");
 	            }
 	        }
-	        catch (PGPException e)
+	        else
 	        {
-	        	logger.severe(e.toString());
-	        	in.close();
-	        	keyIn.close();
-	        	throw new Exception("Could not decrypt file ERROR: "+e.toString());
+	        	logger.info("no message integrity check");
 	        }
 	    }
 
@@ -220,7 +293,7 @@ public final class PGPEncryption {
 	            throws IOException, NoSuchProviderException, PGPException
 	    {
 	        OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFileName));
-	        PGPPublicKey encKey = PGPUtils.readPublicKey(encKeyFileName);
+	        PGPPublicKey encKey = PGPKeyCache.readPublicKey(encKeyFileName);
 	        encryptFile(out, inputFileName, encKey, armor, withIntegrityCheck);
 	        out.close();
 	    }
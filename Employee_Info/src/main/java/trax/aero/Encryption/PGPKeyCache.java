@@ -0,0 +1,192 @@
+package trax.aero.Encryption;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPObjectFactory;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.openpgp.PGPSecretKeyRingCollection;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
+
+import trax.aero.logger.LogManager;
+
+/**
+ * Cache of parsed key ring files, keyed by path and invalidated when the file's
+ * modification time or size changes.
+ *
+ * Parsing the ring and extracting a private key (an S2K-hashed operation) is done
+ * once per key file instead of once per decrypted or encrypted file. Only a
+ * SHA-256 digest of the passphrase is kept, to tell whether a request uses the
+ * passphrase the cached keys were extracted with.
+ */
+final class PGPKeyCache {
+
+	static Logger logger = LogManager.getLogger("EmployeeInfo_I01");
+
+	private static final Map<String, KeyFile> keyFiles = new ConcurrentHashMap<String, KeyFile>();
+
+	private PGPKeyCache() {
+	}
+
+	/**
+	 * The parsed content of one version of a key ring file.
+	 */
+	private static final class KeyFile {
+		final String path;
+		final long lastModified;
+		final long length;
+
+		PGPSecretKeyRingCollection secretKeys;
+		PGPPublicKey publicKey;
+		byte[] passphraseDigest;
+		final Map<Long, PGPPrivateKey> privateKeys = new ConcurrentHashMap<Long, PGPPrivateKey>();
+
+		KeyFile(File file) {
+			this.path = file.getPath();
+			this.lastModified = file.lastModified();
+			this.length = file.length();
+		}
+
+		boolean isCurrent(File file) {
+			return lastModified == file.lastModified() && length == file.length();
+		}
+
+		InputStream open() throws IOException {
+			return new BufferedInputStream(new FileInputStream(path));
+		}
+	}
+
+	private static KeyFile keyFile(String fileName) {
+		File file = new File(fileName).getAbsoluteFile();
+		KeyFile keyFile = keyFiles.get(file.getPath());
+
+		if (keyFile == null || !keyFile.isCurrent(file)) {
+			if (keyFile != null) {
+				logger.info("Key file " + file.getPath() + " changed, reloading");
+			}
+			keyFile = new KeyFile(file);
+			keyFiles.put(file.getPath(), keyFile);
+		}
+		return keyFile;
+	}
+
+	/**
+	 * Returns the private key for keyID from a secret key ring file.
+	 *
+	 * @param fileName the secret key ring file
+	 * @param keyID keyID we want
+	 * @param pass passphrase to decrypt the secret key with
+	 * @return the private key, or null if the ring does not hold the key
+	 * @throws IOException
+	 * @throws PGPException
+	 * @throws NoSuchProviderException
+	 */
+	static PGPPrivateKey findPrivateKey(String fileName, long keyID, char[] pass)
+			throws IOException, PGPException, NoSuchProviderException
+	{
+		KeyFile keyFile = keyFile(fileName);
+
+		synchronized (keyFile) {
+			if (keyFile.secretKeys == null) {
+				keyFile.secretKeys = readSecretKeyRings(keyFile);
+			}
+
+			// Keys extracted with another passphrase are not reused
+			byte[] digest = digest(pass);
+			if (keyFile.passphraseDigest != null && !MessageDigest.isEqual(keyFile.passphraseDigest, digest)) {
+				return PGPUtils.findSecretKey(keyFile.secretKeys, keyID, pass);
+			}
+
+			PGPPrivateKey key = keyFile.privateKeys.get(keyID);
+			if (key == null) {
+				key = PGPUtils.findSecretKey(keyFile.secretKeys, keyID, pass);
+				if (key != null) {
+					keyFile.passphraseDigest = digest;
+					keyFile.privateKeys.put(keyID, key);
+				}
+			}
+			return key;
+		}
+	}
+
+	private static byte[] digest(char[] pass) {
+		ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(pass));
+		try {
+			MessageDigest sha = MessageDigest.getInstance("SHA-256");
+			sha.update(bytes);
+			return sha.digest();
+		} catch (NoSuchAlgorithmException e) {
+			// Every JRE provides SHA-256
+			throw new IllegalStateException(e);
+		} finally {
+			// The encoded copy of the passphrase is not left on the heap
+			Arrays.fill(bytes.array(), (byte) 0);
+		}
+	}
+
+	/**
+	 * Returns the first key suitable for encryption from a public key ring file.
+	 *
+	 * @param fileName the public key ring file
+	 * @return the public key
+	 * @throws IOException
+	 * @throws PGPException
+	 */
+	static PGPPublicKey readPublicKey(String fileName) throws IOException, PGPException
+	{
+		KeyFile keyFile = keyFile(fileName);
+
+		synchronized (keyFile) {
+			if (keyFile.publicKey == null) {
+				InputStream keyIn = keyFile.open();
+				try {
+					keyFile.publicKey = PGPUtils.readPublicKey(keyIn);
+				} finally {
+					keyIn.close();
+				}
+			}
+			return keyFile.publicKey;
+		}
+	}
+
+	private static PGPSecretKeyRingCollection readSecretKeyRings(KeyFile keyFile) throws IOException, PGPException
+	{
+		InputStream keyIn = keyFile.open();
+		try {
+			// The file may also hold public rings, only the secret ones are kept
+			Collection<PGPSecretKeyRing> collection = new ArrayList<PGPSecretKeyRing>();
+			PGPObjectFactory factory = new PGPObjectFactory(PGPUtil.getDecoderStream(keyIn), new JcaKeyFingerprintCalculator());
+			for (Iterator<Object> iter = factory.iterator(); iter.hasNext();) {
+				Object section = iter.next();
+
+				if (section instanceof PGPSecretKeyRing) {
+					collection.add((PGPSecretKeyRing) section);
+				}
+			}
+			logger.info("Loaded " + collection.size() + " secret key rings from " + keyFile.path);
+			return new PGPSecretKeyRingCollection(collection);
+		} finally {
+			keyIn.close();
+		}
+	}
+}
@@ -15,6 +15,7 @@ import javax.ws.rs.core.Response;
 
 
 import trax.aero.logger.LogManager;
+import trax.aero.utils.RunMetrics;
 
 
 
@@ -32,4 +33,13 @@ public class Service {
 		logger.info("Healthy");
     	return Response.ok("Healthy",MediaType.APPLICATION_XML).build();
     }
+	
+	@GET
+    @Path("/metrics")
+    @Produces(MediaType.TEXT_PLAIN + ";charset=UTF-8" )
+    public Response metrics() 
+    {    	
+		// Phase timings, row and round-trip counts of the current or last I01 run
+    	return Response.ok(RunMetrics.report(),MediaType.TEXT_PLAIN).build();
+    }
 }
@@ -13,10 +13,15 @@ import org.apache.commons.mail.Email;
 import org.apache.commons.mail.SimpleEmail;
 
 import trax.aero.logger.LogManager;
+import trax.aero.pojo.EmployeeInfo;
+import trax.aero.utils.ErrorCollector;
 
 public class EmployeeInfoController {
 	
-	static String errors = "";
+	// Errors raised outside of a file, e.g. while connecting
+	static volatile ErrorCollector errors = new ErrorCollector();
+	// Error log of the file the current thread is working on, if any
+	static final ThreadLocal<ErrorCollector> fileErrors = new ThreadLocal<ErrorCollector>();
 	static Logger logger = LogManager.getLogger("EmployeeInfo_I01");
 	
 	static String fromEmail = System.getProperty("fromEmail");
@@ -29,11 +34,53 @@ public class EmployeeInfoController {
 		
 	}
 	
+	private static ErrorCollector currentErrors() {
+		ErrorCollector log = fileErrors.get();
+		return log != null ? log : errors;
+	}
+	
 	public static void addError(String error) {
-		errors=errors.concat(error + System.lineSeparator()+ System.lineSeparator());
+		currentErrors().add(error);
+	}
+	
+	/**
+	 * Adds an error about one employee, keeping its row number. The last error of
+	 * an employee is the reason given for it next to the failure report.
+	 * 
+	 * @param e The employee the error is about
+	 * @param error The error message
+	 */
+	public static void addError(EmployeeInfo e, String error) {
+		e.setError(error);
+		currentErrors().add(e.getRowNumber(), error);
+	}
+	
+	/**
+	 * Sends the errors added by the current thread to the given log until unbindErrors() is called.
+	 * 
+	 * @param log The error log of the file being processed
+	 */
+	public static void bindErrors(ErrorCollector log) {
+		fileErrors.set(log);
+	}
+	
+	public static void unbindErrors() {
+		fileErrors.remove();
 	}
 	
 	public static void sendEmailFile(File file)
+	{
+		try
+		{
+			sendEmailFile(file, errors);
+		}
+		finally
+		{
+			errors = new ErrorCollector();
+		}
+	}
+	
+	public static void sendEmailFile(File file, ErrorCollector errors)
 	{
 		try
 		{
@@ -52,7 +99,7 @@ public class EmployeeInfoController {
 					+" has encountered an issue. "			
 					+ "Enter records manually. "
 					+ "Issues found at:\n"  
-					+errors);
+					+errors.summary());
 			email.send();
 		}
 		catch(Exception e)
@@ -61,10 +108,6 @@ public class EmployeeInfoController {
 			logger.severe("Email not found");
 			
 		}
-		finally
-		{
-			errors = "";
-		}
 	}
 	
 	
@@ -91,7 +134,7 @@ public class EmployeeInfoController {
 					+" has encountered an issue. "			
 					+ "Enter records manually. "
 					+ "Issues found at:\n"  
-					+errors);
+					+errors.summary());
 			email.send();
 		}
 		catch(Exception e)
@@ -102,7 +145,7 @@ public class EmployeeInfoController {
 		}
 		finally
 		{
-			errors = "";
+			errors = new ErrorCollector();
 		}
 	}
 
@@ -0,0 +1,90 @@
+package trax.aero.data;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The EMPLOYEE relation codes already in RELATION_MASTER, shared by all the
+ * workers of a run so they can tell new employees from existing ones without a
+ * query per row.
+ *
+ * The codes are preloaded once at the start of the run. Numeric codes, the
+ * usual case for HR employee numbers, are kept in a sorted long array (8 bytes
+ * a code) and the others in a concurrent set. Codes inserted during the run are
+ * added to the set once their insert has committed.
+ *
+ * The directory may be stale (another process can insert employees in the
+ * meantime), so callers must still handle a duplicate key on insert.
+ */
+public class EmployeeDirectory {
+
+	private static final int MAX_DIGITS = 18;
+
+	// Written by preload() and seal() only, before the directory is shared
+	private long[] numeric = new long[1024];
+	private int numericCount = 0;
+	private final Set<String> others = ConcurrentHashMap.newKeySet();
+
+	// A code is numeric if it reads back the same as a long: no sign, no leading zero
+	private static long toNumber(String code) {
+		int length = code.length();
+		if (length == 0 || length > MAX_DIGITS || (code.charAt(0) == '0' && length > 1)) {
+			return -1;
+		}
+		long value = 0;
+		for (int i = 0; i < length; i++) {
+			char c = code.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	/**
+	 * Adds a code read from the database. Not thread-safe, seal() must be called
+	 * once every code is loaded and before the directory is shared.
+	 */
+	public void preload(String code) {
+		long number = toNumber(code);
+		if (number < 0) {
+			others.add(code);
+			return;
+		}
+		if (numericCount == numeric.length) {
+			numeric = Arrays.copyOf(numeric, numericCount * 2);
+		}
+		numeric[numericCount++] = number;
+	}
+
+	public void seal() {
+		numeric = Arrays.copyOf(numeric, numericCount);
+		Arrays.sort(numeric);
+	}
+
+	public boolean contains(String code) {
+		if (code == null) {
+			return false;
+		}
+		long number = toNumber(code);
+		if (number >= 0 && Arrays.binarySearch(numeric, number) >= 0) {
+			return true;
+		}
+		return others.contains(code);
+	}
+
+	/**
+	 * Records an employee whose insert has committed.
+	 */
+	public void add(String code) {
+		if (code != null && !contains(code)) {
+			others.add(code);
+		}
+	}
+
+	public int size() {
+		return numericCount + others.size();
+	}
+}
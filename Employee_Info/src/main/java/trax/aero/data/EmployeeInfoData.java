@@ -1,5 +1,6 @@
 package trax.aero.data;
 
+import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
@@ -9,28 +10,43 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoField;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
-import javax.persistence.Persistence;
 import javax.persistence.Query;
-import javax.persistence.TemporalType;
 
 import trax.aero.controller.EmployeeInfoController;
 import trax.aero.exception.CustomizeHandledException;
 import trax.aero.logger.LogManager;
 import trax.aero.model.InterfaceLockMaster;
 import trax.aero.pojo.EmployeeInfo;
+import trax.aero.utils.ConcurrencyLimiter;
 import trax.aero.utils.DataSourceClient;
+import trax.aero.utils.RetryPolicy;
+import trax.aero.utils.RunMetrics;
+import trax.aero.utils.SystemProperties;
 
 
 public class EmployeeInfoData {
@@ -39,18 +55,38 @@ public class EmployeeInfoData {
     private EntityManagerFactory factory;
     private EntityManager em;
     private String executed = "OK";
-    
+    private TranscodeCache transcodes = new TranscodeCache();
+    // Existing employees of the run, null when every row goes through the MERGE
+    private EmployeeDirectory employees;
+    // Told how long the statements take, when the run adapts its concurrency
+    private ConcurrencyLimiter limiter;
+
+    // Set once the connection of an upsert is dropped, the rest of the chunk is not written with it
+    private boolean connectionLost = false;
+
+    // Statements prepared on the current connection, keyed by their SQL text
+    private final Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+
  static Logger logger = LogManager.getLogger("EmployeeInfo_I01");
-    
- public EmployeeInfoData() {
-        factory = Persistence.createEntityManagerFactory("TraxStandaloneDS");
+
+ /**
+  * Creates a data-access context on top of a shared EntityManagerFactory.
+  *
+  * The context owns one EntityManager and one connection leased from the datasource,
+  * so it is meant to be reused for many employees by a single thread and released
+  * with close() once the thread is done.
+  *
+  * @param factory The EntityManagerFactory shared by the whole run
+  */
+ public EmployeeInfoData(EntityManagerFactory factory) {
+        this.factory = factory;
         em = factory.createEntityManager();
-        
+
         try {
             if (this.con == null || this.con.isClosed()) {
                 this.con = DataSourceClient.getConnection();
                 logger.info("The connection was established successfully with status: " + String.valueOf(!this.con.isClosed()));
-            }        
+            }
         } catch (SQLException | CustomizeHandledException e) {
         	EmployeeInfoController.addError(e.toString());
             logger.severe(e.toString());
@@ -59,11 +95,87 @@ public class EmployeeInfoData {
             logger.severe(e.toString());
         }
     }
-    
+
     public Connection getCon() {
         return con;
     }
-    
+
+    public void setLimiter(ConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    public void setTranscodes(TranscodeCache transcodes) {
+        this.transcodes = transcodes;
+    }
+
+    public void setEmployees(EmployeeDirectory employees) {
+        this.employees = employees;
+    }
+
+    /**
+     * Returns a cached PreparedStatement for the given SQL, preparing it on first use.
+     *
+     * If the leased connection was closed in the meantime, a new one is obtained and the
+     * statement cache is discarded.
+     *
+     * @param sql The SQL text of the statement
+     * @return The prepared statement bound to the current connection
+     * @throws Exception If the connection cannot be obtained or the statement cannot be prepared
+     */
+    private PreparedStatement prepare(String sql) throws Exception {
+        if (con == null || con.isClosed()) {
+            statements.clear();
+            con = DataSourceClient.getConnection();
+            logger.info("The connection was re-established successfully with status: " + String.valueOf(!con.isClosed()));
+        }
+
+        PreparedStatement ps = statements.get(sql);
+        if (ps == null || ps.isClosed()) {
+            ps = con.prepareStatement(sql);
+            statements.put(sql, ps);
+        }
+        return ps;
+    }
+
+    /**
+     * Releases the cached statements, the leased connection and the EntityManager.
+     */
+    public void close() {
+        closeConnection();
+
+        if (em != null && em.isOpen()) {
+            em.close();
+        }
+    }
+
+    /**
+     * Drops a connection that failed, the next statement leases a new one from the datasource.
+     */
+    private void resetConnection() {
+        logger.warning("Connection lost, a new one will be leased");
+        closeConnection();
+        con = null;
+    }
+
+    private void closeConnection() {
+        for (PreparedStatement ps : statements.values()) {
+            try {
+                ps.close();
+            } catch (SQLException e) {
+                logger.warning("Error closing statement: " + e.toString());
+            }
+        }
+        statements.clear();
+
+        try {
+            if (con != null && !con.isClosed()) {
+                con.close();
+            }
+        } catch (SQLException e) {
+            logger.severe("Error closing connection: " + e.toString());
+        }
+    }
+
     // Formatter to assign 00:00 when time-stamp is missing
     private static final DateTimeFormatter CSV_FMT = new DateTimeFormatterBuilder()
         .appendPattern("M/d/yyyy")
@@ -75,457 +187,210 @@ public class EmployeeInfoData {
     /**
      * Searches for an company transcode in the database and takes appropriate action
      * 
-     * This method checks if an transcode exists by relation code and then calls 
-     * insertEmployee if the results returns 0.
+     * This method checks if an transcode exists by cost code and then calls 
+     * insertTrancode if it does not.
      * 
      * @param e The EmployeeInfo object containing company details
      * @return A string indicating the result of the operation ("OK" or error message)
      */
    	public String findTranscodeCompany(EmployeeInfo e) {
-   		executed = "OK";
-   		
-   		if (!checkMinValue(e)) {
-            executed = "Cannot find Transacode due to missing required field: company ";
-            logger.severe(executed);
-            EmployeeInfoController.addError(executed);
-            return executed;
-        }
-   		
-   		try {
-            // Log the relation code we're checking for debugging purposes
-            logger.info("Checking if transcode exists with company: " + e.getCostCode());
-            
-            // Query to check if the company exists in system_tran_code table
-            String queryStr = "SELECT COUNT(*) FROM system_tran_code " +
-                             "WHERE system_code = ? AND system_transaction = 'ORDERCATEGORY'";
-            
-            PreparedStatement ps = con.prepareStatement(queryStr);
-            ps.setString(1, e.getCostCode());
-            
-            ResultSet rs = ps.executeQuery();
-            int count = 0;
-            
-            if (rs.next()) {
-                count = rs.getInt(1);
-            }
-            
-            rs.close();
-            ps.close();
-            
-            // Log the count for debugging purposes
-            logger.info("Found " + count + " existing records for department: " + e.getCostCode());
-            
-            // If company does not exists, insert a new one
-            if (count > 0) {
-                logger.info("Transcode with company: " + e.getCostCode() + " found. ");
-                return executed;
-            } else {
-                logger.info("Transcode with company: " + e.getCostCode() + " not found. Proceeding to insert.");
-                return insertTrancodeCompany(e);
-            }
-            
-        } catch (Exception ex) {
-            executed = "Error finding department: " + ex.toString();
-            logger.severe(executed);
-            EmployeeInfoController.addError(executed);
-            return executed;
-        }
-		
-   	}
-    
-   	/**
-   	 * Inserts a new company transcode into the system_tran_code table
-   	 * 
-   	 * @param e The EmployeeInfo object containing company details
-   	 * @return A string indicating the result of the operation ("OK" or error message)
-   	 */
-   	private String insertTrancodeCompany(EmployeeInfo e) {
-   	    executed = "OK";
-   	    
-   	    // Validate required field
-   	    if (e.getCostCode() == null || e.getCostCode().isEmpty()) {
-   	        executed = "Cannot insert Department TranCode: department cannot be null or empty";
-   	        logger.severe(executed);
-   	        EmployeeInfoController.addError(executed);
-   	        return executed;
-   	    }
-   	    
-   	    EntityTransaction transaction = null;
-   	    
-   	    try {
-   	        // Begin transaction
-   	        transaction = em.getTransaction();
-   	        if (!transaction.isActive()) {
-   	            transaction.begin();
-   	        }
-   	        
-   	        // Prepare the SQL insert query with named parameters
-   	        Query insertQuery = em.createNativeQuery(
-   	            "INSERT INTO SYSTEM_TRAN_CODE (" +
-   	            "  SYSTEM_TRANSACTION, SYSTEM_CODE, SYSTEM_CODE_DESCRIPTION, PN_TRANSACTION, PN_COSTING_METHOD, " +
-   	            "  CREATED_BY, CREATED_DATE, SYSTEM_TRAN_CODE_SUB, STATUS" +
-   	            ") VALUES (" +
-   	            "  'ORDERCATEGORY', :systemCode, :systemCodeDescription, 'C', 'A', " +
-   	            "  'TRAX_IFACE', SYSDATE, 'I01', 'ACTIVE'" +
-   	            ")"
-   	        );
-   	        
-   	        // Set parameters
-   	        insertQuery.setParameter("systemCode", e.getCostCode());
-   	        insertQuery.setParameter("systemCodeDescription", 
-   	            e.getCompanyName() != null ? e.getCompanyName() : e.getCostCode());
-   	        
-   	        // Execute the insert query
-   	        int rowsAffected = insertQuery.executeUpdate();
-   	        
-   	        // Commit the transaction
-   	        transaction.commit();
-   	        
-   	        logger.info("Successfully inserted Company TranCode: " + e.getCostCode() + 
-   	                   " with description: " + (e.getCompanyName() != null ? e.getCompanyName() : e.getCostCode()) + 
-   	                   ". Rows affected: " + rowsAffected);
-   	        
-   	    } catch (Exception ex) {
-   	        // Rollback transaction in case of error
-   	        if (transaction != null && transaction.isActive()) {
-   	            transaction.rollback();
-   	        }
-   	        executed = "Error inserting Company TranCode: " + ex.toString();
-   	        logger.severe(executed);
-   	        EmployeeInfoController.addError(executed);
-   	    }
-   	    
-   	    return executed;
+   		return findTranscode(e, "ORDERCATEGORY", e.getCostCode(),
+   				e.getCompanyName() != null ? e.getCompanyName() : e.getCostCode(), "company");
    	}
-   	
     
     /**
      * Searches for an department transcode in the database and takes appropriate action
      * 
-     * This method checks if an transcode exists by relation code and then calls 
-     * insertEmployee if the results returns 0.
+     * This method checks if an transcode exists by department code and then calls 
+     * insertTrancode if it does not.
      * 
      * @param e The EmployeeInfo object containing department details
      * @return A string indicating the result of the operation ("OK" or error message)
      */
    	public String findTranscodeDepartment(EmployeeInfo e) {
-   		executed = "OK";
-   		
-   		if (!checkMinValue(e)) {
-            executed = "Cannot find Transacode due to missing required field: department ";
-            logger.severe(executed);
-            EmployeeInfoController.addError(executed);
-            return executed;
-        }
-   		
-   		try {
-            // Log the relation code we're checking for debugging purposes
-            logger.info("Checking if transcode exists with department: " + e.getDepartment());
-            
-            // Query to check if the department exists in system_tran_code table
-            String queryStr = "SELECT COUNT(*) FROM system_tran_code " +
-                             "WHERE system_code = ? AND system_transaction = 'DEPARTMENT'";
-            
-            PreparedStatement ps = con.prepareStatement(queryStr);
-            ps.setString(1, e.getDepartment());
-            
-            ResultSet rs = ps.executeQuery();
-            int count = 0;
-            
-            if (rs.next()) {
-                count = rs.getInt(1);
-            }
-            
-            rs.close();
-            ps.close();
-            
-            // Log the count for debugging purposes
-            logger.info("Found " + count + " existing records for department: " + e.getDepartment());
-            
-            // If department does not exists, insert a new one
-            if (count > 0) {
-                logger.info("Transcode with department: " + e.getDepartment() + " found. ");
-                return executed;
-            } else {
-                logger.info("Transcode with department: " + e.getDepartment() + " not found. Proceeding to insert.");
-                return insertTrancodeDepartment(e);
-            }
-            
-        } catch (Exception ex) {
-            executed = "Error finding department: " + ex.toString();
-            logger.severe(executed);
-            EmployeeInfoController.addError(executed);
-            return executed;
-        }
-		
-   	}
-    
-   	/**
-   	 * Inserts a new department transcode into the system_tran_code table
-   	 * 
-   	 * @param e The EmployeeInfo object containing department details
-   	 * @return A string indicating the result of the operation ("OK" or error message)
-   	 */
-   	private String insertTrancodeDepartment(EmployeeInfo e) {
-   	    executed = "OK";
-   	    
-   	    // Validate required field
-   	    if (e.getDepartment() == null || e.getDepartment().isEmpty()) {
-   	        executed = "Cannot insert Department TranCode: department cannot be null or empty";
-   	        logger.severe(executed);
-   	        EmployeeInfoController.addError(executed);
-   	        return executed;
-   	    }
-   	    
-   	    EntityTransaction transaction = null;
-   	    
-   	    try {
-   	        // Begin transaction
-   	        transaction = em.getTransaction();
-   	        if (!transaction.isActive()) {
-   	            transaction.begin();
-   	        }
-   	        
-   	        // Prepare the SQL insert query with named parameters
-   	        Query insertQuery = em.createNativeQuery(
-   	            "INSERT INTO SYSTEM_TRAN_CODE (" +
-   	            "  SYSTEM_TRANSACTION, SYSTEM_CODE, SYSTEM_CODE_DESCRIPTION, PN_TRANSACTION, PN_COSTING_METHOD, " +
-   	            "  CREATED_BY, CREATED_DATE, SYSTEM_TRAN_CODE_SUB, STATUS" +
-   	            ") VALUES (" +
-   	            "  'DEPARTMENT', :systemCode, :systemCodeDescription, 'C', 'A', " +
-   	            "  'TRAX_IFACE', SYSDATE, 'I01', 'ACTIVE'" +
-   	            ")"
-   	        );
-   	        
-   	        // Set parameters
-   	        insertQuery.setParameter("systemCode", e.getDepartment());
-   	        insertQuery.setParameter("systemCodeDescription", 
-   	            e.getDepartmentDescription() != null ? e.getDepartmentDescription() : e.getDepartment());
-   	        
-   	        // Execute the insert query
-   	        int rowsAffected = insertQuery.executeUpdate();
-   	        
-   	        // Commit the transaction
-   	        transaction.commit();
-   	        
-   	        logger.info("Successfully inserted Department TranCode: " + e.getDepartment() + 
-   	                   " with description: " + (e.getDepartmentDescription() != null ? e.getDepartmentDescription() : e.getDepartment()) + 
-   	                   ". Rows affected: " + rowsAffected);
-   	        
-   	    } catch (Exception ex) {
-   	        // Rollback transaction in case of error
-   	        if (transaction != null && transaction.isActive()) {
-   	            transaction.rollback();
-   	        }
-   	        executed = "Error inserting Department TranCode: " + ex.toString();
-   	        logger.severe(executed);
-   	        EmployeeInfoController.addError(executed);
-   	    }
-   	    
-   	    return executed;
+   		return findTranscode(e, "DEPARTMENT", e.getDepartment(),
+   				e.getDepartmentDescription() != null ? e.getDepartmentDescription() : e.getDepartment(), "department");
    	}
-   	
 
 	/**
      * Searches for an division transcode in the database and takes appropriate action
      * 
-     * This method checks if an transcode exists by relation code and then calls 
-     * insertEmployee if the results returns 0.
+     * This method checks if an transcode exists by division code and then calls 
+     * insertTrancode if it does not.
      * 
      * @param e The EmployeeInfo object containing division details
      * @return A string indicating the result of the operation ("OK" or error message)
      */
 	public String findTranscodeDivision(EmployeeInfo e) {
-   		executed = "OK";
-   		
-   		if (!checkMinValue(e)) {
-            executed = "Cannot find Transacode due to missing required field: division ";
-            logger.severe(executed);
-            EmployeeInfoController.addError(executed);
-            return executed;
-        }
-   		
-   		try {
-            // Log the relation code we're checking for debugging purposes
-            logger.info("Checking if transcode exists with division: " + e.getDivision());
-            
-            // Query to check if the division exists in system_tran_code table
-            String queryStr = "SELECT COUNT(*) FROM system_tran_code " +
-                             "WHERE system_code = ? AND system_transaction = 'DEPDIVISION'";
-            
-            PreparedStatement ps = con.prepareStatement(queryStr);
-            ps.setString(1, e.getDivision());
-            
-            ResultSet rs = ps.executeQuery();
-            int count = 0;
-            
-            if (rs.next()) {
-                count = rs.getInt(1);
-            }
-            
-            rs.close();
-            ps.close();
-            
-            // Log the count for debugging purposes
-            logger.info("Found " + count + " existing records for division: " + e.getDivision());
-            
-            // If division does not exists, insert a new one
-            if (count > 0) {
-                logger.info("Transcode with division: " + e.getDivision() + " found. ");
-                return executed;
-            } else {
-                logger.info("Transcode with division: " + e.getDivision() + " not found. Proceeding to insert.");
-                return insertTrancodeDivision(e);
-            }
-            
-        } catch (Exception ex) {
-            executed = "Error finding division: " + ex.toString();
-            logger.severe(executed);
-            EmployeeInfoController.addError(executed);
-            return executed;
-        }
-		
+		return findTranscode(e, "DEPDIVISION", e.getDivision(),
+				e.getDivisionDescription() != null ? e.getDivisionDescription() : e.getDivision(), "division");
    	}
-	
-	
-	/**
-	 * Inserts a new division transcode into the system_tran_code table
-	 * 
-	 * @param e The EmployeeInfo object containing division details
-	 * @return A string indicating the result of the operation ("OK" or error message)
-	 */
-	private String insertTrancodeDivision(EmployeeInfo e) {
-	    executed = "OK";
-	    
-	    // Validate required field
-	    if (e.getDivision() == null || e.getDivision().isEmpty()) {
-	        executed = "Cannot insert Division TranCode: division cannot be null or empty";
-	        logger.severe(executed);
-	        EmployeeInfoController.addError(executed);
-	        return executed;
-	    }
-	    
-	    EntityTransaction transaction = null;
-	    
-	    try {
-	        // Begin transaction
-	        transaction = em.getTransaction();
-	        if (!transaction.isActive()) {
-	            transaction.begin();
-	        }
-	        
-	        // Prepare the SQL insert query with named parameters
-	        Query insertQuery = em.createNativeQuery(
-	            "INSERT INTO SYSTEM_TRAN_CODE (" +
-	            "  SYSTEM_TRANSACTION, SYSTEM_CODE, SYSTEM_CODE_DESCRIPTION, PN_TRANSACTION, PN_COSTING_METHOD, " +
-	            "  CREATED_BY, CREATED_DATE, SYSTEM_TRAN_CODE_SUB, STATUS" +
-	            ") VALUES (" +
-	            "  'DEPDIVISION', :systemCode, :systemCodeDescription, 'C', 'A', " +
-	            "  'TRAX_IFACE', SYSDATE, 'I01', 'ACTIVE'" +
-	            ")"
-	        );
-	        
-	        // Set parameters
-	        insertQuery.setParameter("systemCode", e.getDivision());
-	        insertQuery.setParameter("systemCodeDescription", 
-	            e.getDivisionDescription() != null ? e.getDivisionDescription() : e.getDivision());
-	        
-	        // Execute the insert query
-	        int rowsAffected = insertQuery.executeUpdate();
-	        
-	        // Commit the transaction
-	        transaction.commit();
-	        
-	        logger.info("Successfully inserted Division TranCode: " + e.getDivision() + 
-	                   " with description: " + (e.getDivisionDescription() != null ? e.getDivisionDescription() : e.getDivision()) + 
-	                   ". Rows affected: " + rowsAffected);
-	        
-	    } catch (Exception ex) {
-	        // Rollback transaction in case of error
-	        if (transaction != null && transaction.isActive()) {
-	            transaction.rollback();
-	        }
-	        executed = "Error inserting Division TranCode: " + ex.toString();
-	        logger.severe(executed);
-	        EmployeeInfoController.addError(executed);
-	    }
-	    
-	    return executed;
-	}
 
 	/**
      * Searches for an position transcode in the database and takes appropriate action
      * 
-     * This method checks if an transcode exists by relation code and then calls 
-     * insertEmployee if the results returns 0.
+     * This method checks if an transcode exists by position code and then calls 
+     * insertTrancode if it does not.
      * 
      * @param e The EmployeeInfo object containing position details
      * @return A string indicating the result of the operation ("OK" or error message)
      */
 	public String findTrancodePosition(EmployeeInfo e) {
-   		executed = "OK";
-   		
-   		if (!checkMinValue(e)) {
-            executed = "Cannot find Transacode due to missing required field: position ";
-            logger.severe(executed);
-            EmployeeInfoController.addError(executed);
-            return executed;
-        }
-   		
-   		try {
-            // Log the relation code we're checking for debugging purposes
-            logger.info("Checking if transcode exists with position: " + e.getPositionCode());
-            
-            // Query to check if the position exists in system_tran_code table
-            String queryStr = "SELECT COUNT(*) FROM system_tran_code " +
-                             "WHERE system_code = ? AND system_transaction = 'EMPLPOS'";
-            
-            PreparedStatement ps = con.prepareStatement(queryStr);
-            ps.setString(1, e.getPositionCode());
-            
-            ResultSet rs = ps.executeQuery();
-            int count = 0;
-            
-            if (rs.next()) {
-                count = rs.getInt(1);
-            }
-            
-            rs.close();
-            ps.close();
-            
-            // Log the count for debugging purposes
-            logger.info("Found " + count + " existing records for position: " + e.getPositionCode());
-            
-            // If position does not exists, insert a new one
-            if (count > 0) {
-                logger.info("Transcode with position: " + e.getPositionCode() + " found. ");
-                return executed;
-            } else {
-                logger.info("Transcode with position: " + e.getPositionCode() + " not found. Proceeding to insert.");
-                return insertTrancodePosition(e);
-            }
-            
-        } catch (Exception ex) {
-            executed = "Error finding department: " + ex.toString();
+		return findTranscode(e, "EMPLPOS", e.getPositionCode(),
+				e.getPosition() != null ? e.getPosition() : e.getPositionCode(), "position");
+   	}
+	
+	/**
+	 * Loads every DEPARTMENT, DEPDIVISION, EMPLPOS and ORDERCATEGORY code of system_tran_code into the cache
+	 * 
+	 * @param cache The cache shared by the workers of the run
+	 * @return The number of codes loaded
+	 * @throws Exception If the codes cannot be read
+	 */
+	public int loadTranscodes(TranscodeCache cache) throws Exception {
+		String queryStr = "SELECT system_transaction, system_code FROM system_tran_code " +
+				"WHERE system_transaction IN ('DEPARTMENT', 'DEPDIVISION', 'EMPLPOS', 'ORDERCATEGORY')";
+		
+		PreparedStatement ps = prepare(queryStr);
+		RunMetrics.roundTrip("transcode.load");
+		ResultSet rs = ps.executeQuery();
+		int loaded = 0;
+		
+		while (rs.next()) {
+			cache.add(rs.getString(1), rs.getString(2));
+			loaded++;
+		}
+		
+		rs.close();
+		
+		logger.info("Loaded " + loaded + " transcodes into the cache");
+		return loaded;
+	}
+	
+	/**
+	 * Loads the relation codes of every existing employee into the directory of the run
+	 * 
+	 * @param directory The directory to fill, sealed once every code is read
+	 * @return The number of codes loaded
+	 * @throws Exception If the codes cannot be read
+	 */
+	public int loadEmployeeCodes(EmployeeDirectory directory) throws Exception {
+		String queryStr = "SELECT relation_code FROM relation_master WHERE relation_transaction = 'EMPLOYEE'";
+		
+		PreparedStatement ps = prepare(queryStr);
+		ps.setFetchSize(5000);
+		RunMetrics.roundTrip("employee.load");
+		ResultSet rs = ps.executeQuery();
+		int loaded = 0;
+		
+		while (rs.next()) {
+			directory.preload(rs.getString(1));
+			loaded++;
+		}
+		
+		rs.close();
+		directory.seal();
+		
+		logger.info("Loaded " + loaded + " existing employees into the directory");
+		return loaded;
+	}
+	
+	/**
+	 * Checks if a transcode exists, inserting it into system_tran_code when it does not
+	 * 
+	 * Codes already in the shared cache are accepted without a query. Otherwise the code is
+	 * checked and inserted while holding the cache lock for that code, so parallel workers
+	 * that meet the same new code insert it only once.
+	 * 
+	 * @param e The EmployeeInfo object the code belongs to
+	 * @param transaction The SYSTEM_TRANSACTION of the code
+	 * @param code The SYSTEM_CODE to look for
+	 * @param description The SYSTEM_CODE_DESCRIPTION used if the code has to be inserted
+	 * @param label The name of the code used in log messages
+	 * @return A string indicating the result of the operation ("OK" or error message)
+	 */
+	private String findTranscode(EmployeeInfo e, String transaction, String code, String description, String label) {
+		executed = "OK";
+		
+		if (!checkMinValue(e)) {
+            executed = "Cannot find Transacode due to missing required field: " + label + " ";
             logger.severe(executed);
-            EmployeeInfoController.addError(executed);
+            EmployeeInfoController.addError(e, executed);
             return executed;
         }
-
-   	}
+		
+		if (transcodes.contains(transaction, code)) {
+			return executed;
+		}
+		
+		synchronized (transcodes.lockFor(transaction, code)) {
+			// Another worker may have inserted the code while this one was waiting
+			if (transcodes.contains(transaction, code)) {
+				return executed;
+			}
+			
+			try {
+	            logger.info("Checking if transcode exists with " + label + ": " + code);
+	            
+	            // Query to check if the code exists in system_tran_code table
+	            String queryStr = "SELECT COUNT(*) FROM system_tran_code " +
+	                             "WHERE system_code = ? AND system_transaction = ?";
+	            
+	            PreparedStatement ps = prepare(queryStr);
+	            ps.setString(1, code);
+	            ps.setString(2, transaction);
+	            
+	            RunMetrics.roundTrip("transcode.select");
+	            ResultSet rs = ps.executeQuery();
+	            int count = 0;
+	            
+	            if (rs.next()) {
+	                count = rs.getInt(1);
+	            }
+	            
+	            rs.close();
+	            
+	            // If the code does not exists, insert a new one
+	            if (count > 0) {
+	                logger.info("Transcode with " + label + ": " + code + " found. ");
+	            } else {
+	                logger.info("Transcode with " + label + ": " + code + " not found. Proceeding to insert.");
+	                insertTrancode(transaction, code, description, label);
+	            }
+	            
+	            if (executed.equals("OK")) {
+	            	transcodes.add(transaction, code);
+	            }
+	            return executed;
+	            
+	        } catch (Exception ex) {
+	            executed = "Error finding " + label + ": " + ex.toString();
+	            logger.severe(executed);
+	            EmployeeInfoController.addError(e, executed);
+	            return executed;
+	        }
+		}
+	}
    
 	/**
-	 * Inserts a new position transcode into the system_tran_code table
+	 * Inserts a new transcode into the system_tran_code table
 	 * 
-	 * @param e The EmployeeInfo object containing position details
+	 * The insert commits on its own instead of joining the unit of work of the chunk: the code
+	 * is added to the transcode cache shared by every worker as soon as it is found, so it must
+	 * stay in the database even if the chunk that met it first is rolled back.
+	 * 
+	 * @param systemTransaction The SYSTEM_TRANSACTION of the code
+	 * @param code The SYSTEM_CODE to insert
+	 * @param description The SYSTEM_CODE_DESCRIPTION of the code
+	 * @param label The name of the code used in log messages
 	 * @return A string indicating the result of the operation ("OK" or error message)
 	 */
-	private String insertTrancodePosition(EmployeeInfo e) {
+	private String insertTrancode(String systemTransaction, String code, String description, String label) {
 	    executed = "OK";
 	    
 	    // Validate required field
-	    if (e.getPositionCode() == null || e.getPositionCode().isEmpty()) {
-	        executed = "Cannot insert Position TranCode: positionCode cannot be null or empty";
+	    if (code == null || code.isEmpty()) {
+	        executed = "Cannot insert " + label + " TranCode: " + label + " cannot be null or empty";
 	        logger.severe(executed);
 	        EmployeeInfoController.addError(executed);
 	        return executed;
@@ -546,24 +411,26 @@ public class EmployeeInfoData {
 	            "  SYSTEM_TRANSACTION, SYSTEM_CODE, SYSTEM_CODE_DESCRIPTION, PN_TRANSACTION, PN_COSTING_METHOD, " +
 	            "  CREATED_BY, CREATED_DATE, SYSTEM_TRAN_CODE_SUB, STATUS" +
 	            ") VALUES (" +
-	            "  'EMPLPOS', :systemCode, :systemCodeDescription, 'C', 'A', " +
+	            "  :systemTransaction, :systemCode, :systemCodeDescription, 'C', 'A', " +
 	            "  'TRAX_IFACE', SYSDATE, 'I01', 'ACTIVE'" +
 	            ")"
 	        );
 	        
 	        // Set parameters
-	        insertQuery.setParameter("systemCode", e.getPositionCode());
-	        insertQuery.setParameter("systemCodeDescription", 
-	            e.getPosition() != null ? e.getPosition() : e.getPositionCode());
+	        insertQuery.setParameter("systemTransaction", systemTransaction);
+	        insertQuery.setParameter("systemCode", code);
+	        insertQuery.setParameter("systemCodeDescription", description);
 	        
 	        // Execute the insert query
+	        RunMetrics.roundTrip("transcode.insert");
 	        int rowsAffected = insertQuery.executeUpdate();
 	        
 	        // Commit the transaction
+	        RunMetrics.roundTrip("commit");
 	        transaction.commit();
 	        
-	        logger.info("Successfully inserted Position TranCode: " + e.getPositionCode() + 
-	                   " with description: " + (e.getPosition() != null ? e.getPosition() : e.getPositionCode()) + 
+	        logger.info("Successfully inserted " + label + " TranCode: " + code + 
+	                   " with description: " + description + 
 	                   ". Rows affected: " + rowsAffected);
 	        
 	    } catch (Exception ex) {
@@ -571,7 +438,15 @@ public class EmployeeInfoData {
 	        if (transaction != null && transaction.isActive()) {
 	            transaction.rollback();
 	        }
-	        executed = "Error inserting Position TranCode: " + ex.toString();
+	        
+	        // Another process inserted the same code in the meantime
+	        if (ex.toString().contains("unique constraint") || 
+	            ex.toString().contains("ORA-00001")) {
+	        	logger.warning(label + " TranCode: " + code + " was inserted concurrently. No insertion needed.");
+	        	return executed;
+	        }
+	        
+	        executed = "Error inserting " + label + " TranCode: " + ex.toString();
 	        logger.severe(executed);
 	        EmployeeInfoController.addError(executed);
 	    }
@@ -579,380 +454,393 @@ public class EmployeeInfoData {
 	    return executed;
 	}
 
-	/**
-     * Inserts a new employee record into the database
+    // The columns and values of a new employee, shared by the MERGEs and the plain INSERT
+    private static final String INSERT_COLUMNS =
+    		"  relation_code, relation_transaction, name, employee_id, ldap_username, first_name, last_name," +
+    		"  related_location, position, department, division," +
+    		"  mail_phone, mail_email, date_of_birth, date_hired, date_terminated," +
+    		"  gst_gl_company, cost_center, status, created_by, created_date," +
+    		"  modified_by, modified_date, allow_issue_to";
+    
+    private static final String INSERT_VALUES =
+    		"  src.relation_code, 'EMPLOYEE', src.name, src.relation_code, src.ldap_username, src.first_name, src.last_name," +
+    		"  src.related_location, src.position, src.department, src.division," +
+    		"  src.mail_phone, src.mail_email, src.date_of_birth, src.date_hired, src.date_terminated," +
+    		"  src.cost_code, src.cost_code, src.status, 'TRAX_IFACE', SYSDATE," +
+    		"  'TRAX_IFACE', SYSDATE, 'YES'";
+    
+    // The ON, UPDATE and INSERT clauses shared by the row and staging-table MERGEs of relation_master
+    private static final String MERGE_ACTIONS =
+    		"ON (rm.relation_code = src.relation_code AND rm.relation_transaction = 'EMPLOYEE') " +
+    		"WHEN MATCHED THEN UPDATE SET " +
+    		"  rm.name = src.name, rm.first_name = src.first_name, rm.last_name = src.last_name," +
+    		"  rm.ldap_username = src.ldap_username, rm.employee_id = src.relation_code," +
+    		"  rm.related_location = src.related_location, rm.position = src.position," +
+    		"  rm.department = src.department, rm.division = src.division," +
+    		"  rm.mail_phone = src.mail_phone, rm.mail_email = src.mail_email," +
+    		"  rm.date_of_birth = src.date_of_birth, rm.date_hired = src.date_hired, rm.date_terminated = src.date_terminated," +
+    		"  rm.gst_gl_company = src.cost_code, rm.cost_center = src.cost_code," +
+    		"  rm.status = src.status, rm.modified_by = 'TRAX_IFACE', rm.modified_date = SYSDATE," +
+    		"  rm.allow_issue_to = 'YES' " +
+    		"WHEN NOT MATCHED THEN INSERT (" + INSERT_COLUMNS + ") " +
+    		"VALUES (" + INSERT_VALUES + ")";
+    
+    // The values of one employee row, bound by bindEmployee
+    private static final String EMPLOYEE_SOURCE =
+    		"(SELECT ? AS relation_code, ? AS name, ? AS ldap_username, ? AS first_name, ? AS last_name," +
+    		"  ? AS related_location, ? AS position, ? AS department, ? AS division," +
+    		"  ? AS mail_phone, ? AS mail_email, ? AS date_of_birth, ? AS date_hired, ? AS date_terminated," +
+    		"  ? AS cost_code, ? AS status FROM dual) src ";
+    
+    // Upsert of one employee row; values are bound once in the USING clause and reused by both branches
+    private static final String MERGE_EMPLOYEE =
+    		"MERGE INTO relation_master rm " +
+    		"USING " + EMPLOYEE_SOURCE +
+    		MERGE_ACTIONS;
+    
+    // Insert of an employee the directory does not know, with the same binds as MERGE_EMPLOYEE
+    private static final String INSERT_EMPLOYEE =
+    		"INSERT INTO relation_master (" + INSERT_COLUMNS + ") " +
+    		"SELECT " + INSERT_VALUES + " FROM " + EMPLOYEE_SOURCE;
+    
+    /**
+     * Inserts or updates a chunk of employees in relation_master as a single unit of work
      * 
      * This method performs the following operations:
-     * 1. Validates that required fields are present
-     * 2. Inserts employee data into the relation_master table
-     * 3. If skill information is provided, calls insertSkill method
+     * 1. Validates every employee and checks its department, division, position and company transcodes
+     * 2. Executes one MERGE INTO relation_master per employee, in JDBC batches of EmployeeInfo_batchSize rows;
+     *    employees the run's directory does not know are written with a plain INSERT instead
+     * 3. Commits the whole chunk once
      * 
-     * @param e The EmployeeInfo object containing employee details
-     * @return A string indicating the result of the operation ("OK" or error message)
+     * Skills are not inserted here, they are synchronised per chunk with syncSkills once the chunk has committed.
+     * 
+     * If the unit of work fails, it is rolled back and split in halves that are written again
+     * separately, down to single rows, so the rows that really fail can be told apart from the rest.
+     * Rows that fail for a transient reason (deadlock, timeout, lost connection) are not split but
+     * handed back in retries, with the error that stopped them.
+     * 
+     * @param chunk The employees to upsert
+     * @param retries Receives the employees worth another attempt, or null to count them as failures
+     * @return The employees of the chunk that could not be inserted or updated
      */
-    public String insertEmployee(EmployeeInfo e) {
-        executed = "OK";
-        
-        // Validate required fields
-        if (!checkMinValue(e)) {
-        	executed = "Cannot insert Employee due to missing required fields: employeeId or relationCode";
-            logger.severe(executed);
-            EmployeeInfoController.addError(executed);
-            return executed;
-        }
-        
-        EntityTransaction transaction = null;
-        
-        try {
-        	
-	        	LocalDate birthDate = null;
-	            if (e.getDateOfBirth() != null && !e.getDateOfBirth().isEmpty()) {
-	                try {
-	                    int age = Integer.parseInt(e.getDateOfBirth().trim());
-	                    int currentYear = LocalDate.now().getYear();
-	                    int birthYear = currentYear - age;
-	                    birthDate = LocalDate.of(birthYear, 1, 1); // January 1st of calculated year
-	                    logger.info("Calculated birth date for employee " + e.getEmployeeId() + 
-	                               ": age " + age + " -> birth date " + birthDate);
-	                } catch (NumberFormatException nfe) {
-	                    logger.warning("Invalid age format for employee " + e.getEmployeeId() + 
-	                                  ": " + e.getDateOfBirth() + ". Birth date will be set to null.");
-	                    birthDate = null;
-	                }
-	            }
-                LocalDateTime hiredLdt = (e.getDateHired() != null && !e.getDateHired().isEmpty())
-                    ? LocalDateTime.parse(e.getDateHired(), CSV_FMT)
-                    : null;
-                LocalDateTime termLdt = (e.getDateTerminated() != null && !e.getDateTerminated().isEmpty())
-                    ? LocalDateTime.parse(e.getDateTerminated(), CSV_FMT)
-                    : null;
-
-                
-            
-              //Check for TranCode - Department
-                if (e.getDepartment() != null && !e.getDepartment().isEmpty()) {
-                    String deptResult = findTranscodeDepartment(e);
-                    if (!deptResult.equals("OK")) {
-                        logger.warning("TranCode validation failed for Department: " + e.getDepartment());
-                        // Continue with insertion even if TranCode validation fails
-                    }
-                }
-                
-                //Check for TranCode - Division
-                if (e.getDivision() != null && !e.getDivision().isEmpty()) {
-                    String divResult = findTranscodeDivision(e);
-                    if (!divResult.equals("OK")) {
-                        logger.warning("TranCode validation failed for Division: " + e.getDivision());
-                        // Continue with insertion even if TranCode validation fails
-                    }
-                }
-                
-                //Check for TranCode - Position
-                if (e.getPosition() != null && !e.getPosition().isEmpty()) {
-                    String posResult = findTrancodePosition(e);
-                    if (!posResult.equals("OK")) {
-                        logger.warning("TranCode validation failed for Position: " + e.getPosition());
-                        // Continue with insertion even if TranCode validation fails
-                    }
-                }
-                
-                //Check for TranCode - Company
-                if (e.getCostCode() != null && !e.getCostCode().isEmpty()) {
-                    String posResult = findTranscodeCompany(e);
-                    if (!posResult.equals("OK")) {
-                        logger.warning("TranCode validation failed for Company: " + e.getCostCode());
-                        // Continue with insertion even if TranCode validation fails
-                    }
-                }
-                
-            // Check if the employee already exists before trying to insert
-            String checkQuery = "SELECT COUNT(*) FROM relation_master WHERE relation_code = ? AND relation_transaction = 'EMPLOYEE'";
-            PreparedStatement ps = con.prepareStatement(checkQuery);
-            ps.setString(1, e.getRelationCode());
-            
-            ResultSet rs = ps.executeQuery();
-            int count = 0;
-            
-            if (rs.next()) {
-                count = rs.getInt(1);
-            }
-            
-            rs.close();
-            ps.close();
-            
-            // If employee already exists, update instead of insert
-            if (count > 0) {
-                logger.warning("Employee with relationCode: " + e.getRelationCode() + " already exists. Redirecting to update.");
-                return updateEmployee(e);
-            }
-            
-            // Begin transaction
-            transaction = em.getTransaction();
-            if (!transaction.isActive()) {
-                transaction.begin();
-            }
-            
-            // Prepare the SQL insert query with named parameters
-            Query insertQuery = em.createNativeQuery(
-            		"INSERT INTO relation_master (" +
-            	            " relation_code, relation_transaction, name, employee_id, ldap_username, first_name, last_name," +
-            	            " related_location, position, department, division," +
-            	            " mail_phone, mail_email, date_of_birth, date_hired, date_terminated," +
-            	            " gst_gl_company, cost_center, status, created_by, created_date," +
-            	            " modified_by, modified_date, allow_issue_to) " +
-            	            "VALUES (" +
-            	            " :relationCode, 'EMPLOYEE', :fullName, :employeeId, :ldap_username, :firstName, :lastName," +
-            	            " :relatedLocation, :position, :department, :division," +
-            	            " :mailPhone, :mailEmail, :birthdate, :dateHired, :dateTerminated," +
-            	            " :companyName, :costCenter, :status, 'TRAX_IFACE', SYSDATE," +
-            	            " 'TRAX_IFACE', SYSDATE, 'YES')"
-            	        );
-            
-            // Set parameters, handling null values appropriately
-            insertQuery.setParameter("relationCode", e.getRelationCode());
-            insertQuery.setParameter("fullName", e.getFullName() != null ? e.getFullName() : "");
-            insertQuery.setParameter("employeeId", e.getRelationCode());
-            insertQuery.setParameter("ldap_username", e.getEmployeeId() != null ? e.getEmployeeId() : "");
-            insertQuery.setParameter("firstName", e.getFirstName() != null ? e.getFirstName() : "");
-            insertQuery.setParameter("lastName", e.getLastName() != null ? e.getLastName() : "");
-            insertQuery.setParameter("relatedLocation", e.getRelatedLocation() != null ? e.getRelatedLocation() : "");
-            insertQuery.setParameter("position", e.getPosition() != null ? e.getPosition() : "");
-            insertQuery.setParameter("department", e.getDepartment() != null ? e.getDepartment() : "");
-            //insertQuery.setParameter("departmentDescription", e.getDepartmentDescription() != null ? e.getDepartmentDescription() : "");
-            insertQuery.setParameter("division", e.getDivision() != null ? e.getDivision() : "");
-            //insertQuery.setParameter("divisionDescription", e.getDivisionDescription() != null ? e.getDivisionDescription() : "");
-            insertQuery.setParameter("mailPhone", e.getMailPhone() != null ? e.getMailPhone() : "");
-            insertQuery.setParameter("mailEmail", e.getMailEmail() != null ? e.getMailEmail() : "");
-            insertQuery.setParameter("companyName", e.getCostCode() != null ? e.getCostCode() : "");
-            insertQuery.setParameter("costCenter", e.getCostCode() != null ? e.getCostCode() : "");
-            // Convert status code (1=ACTIVE, other=INACTIVE) or default to ACTIVE
-            insertQuery.setParameter("status",
-            	    e.getStatus() != null
-            	        ? (e.getStatus().equals("1") ? "ACTIVE" : "INACTIVE")
-            	        : "ACTIVE"
-            	);
-            
-            
-            // Date binds with TemporalType overload for nulls
-            if (birthDate != null) {
-                insertQuery.setParameter("birthdate", Date.valueOf(birthDate));
-            } else {
-                insertQuery.setParameter("birthdate", (java.util.Date) null, TemporalType.DATE);
-            }
-
-            if (hiredLdt != null) {
-                insertQuery.setParameter("dateHired", Timestamp.valueOf(hiredLdt));
-            } else {
-                insertQuery.setParameter("dateHired", (java.util.Date) null, TemporalType.TIMESTAMP);
-            }
-
-            if (termLdt != null) {
-                insertQuery.setParameter("dateTerminated", Timestamp.valueOf(termLdt));
-            } else {
-                insertQuery.setParameter("dateTerminated", (java.util.Date) null, TemporalType.TIMESTAMP);
-            }
-
-            
-            // Execute the insert query
-            int rowsAffected = insertQuery.executeUpdate();
-            
-            // Commit the transaction
-            transaction.commit();
-            
-            logger.info("Successfully inserted employee: " + e.getEmployeeId() + " with relation code: " + e.getRelationCode() + ". Rows affected: " + rowsAffected);
-            
-            // If skill information is provided, insert it
-            if (e.getSkill() != null && !e.getSkill().isEmpty()) {
-                insertSkill(e);
-            }
-            
-        } catch (Exception ex) {
-            // Rollback transaction in case of error
-            if (transaction != null && transaction.isActive()) {
-                transaction.rollback();
-            }
-            
-            // Check if it's a unique constraint violation
-            if (ex.toString().contains("unique constraint") || 
-                ex.toString().contains("ORA-00001") || 
-                ex.toString().contains("P_RELATION_MASTER")) {
-                logger.warning("Attempted to insert employee with relationCode: " + e.getRelationCode() + " that already exists. Trying to update instead.");
-                return updateEmployee(e);
-            }
-            
-            executed = "Error inserting employee: " + ex.toString();
-            logger.severe(executed);
-            EmployeeInfoController.addError(executed);
-        }
-        
-        return executed;
+    public List<EmployeeInfo> upsertEmployees(List<EmployeeInfo> chunk, List<EmployeeInfo> retries) {
+    	List<EmployeeInfo> failures = new ArrayList<EmployeeInfo>();
+    	List<EmployeeInfo> batched = new ArrayList<EmployeeInfo>();
+    	// Rows of the groups already committed, which an error in a later group must leave alone
+    	Set<EmployeeInfo> committed = Collections.newSetFromMap(new IdentityHashMap<EmployeeInfo, Boolean>());
+    	connectionLost = false;
+    	
+    	try {
+    		PreparedStatement ps = prepare(MERGE_EMPLOYEE);
+    		PreparedStatement insert = employees != null ? prepare(INSERT_EMPLOYEE) : null;
+    		
+    		for (EmployeeInfo e : chunk) {
+    			if (!checkMinValue(e)) {
+    				executed = "Cannot insert Employee due to missing required fields: employeeId or relationCode";
+    				logger.severe(executed);
+    				EmployeeInfoController.addError(e, executed);
+    				failures.add(e);
+    				continue;
+    			}
+    			
+    			try {
+    				long transcodesStart = System.nanoTime();
+    				checkTranscodes(e);
+    				RunMetrics.time("transcodes", transcodesStart);
+    				// A date that cannot be parsed would fail the whole batch, so such a row never joins the unit of work
+    				parseDateTime(e.getDateHired());
+    				parseDateTime(e.getDateTerminated());
+    				batched.add(e);
+    			} catch (Exception ex) {
+    				executed = "Error inserting employee: " + e.getRelationCode() + " " + ex.toString();
+    				logger.severe(executed);
+    				EmployeeInfoController.addError(e, executed);
+    				failures.add(e);
+    			}
+    		}
+    		
+    		if (batched.isEmpty()) {
+    			return failures;
+    		}
+    		
+    		int batchSize = Math.max(1, SystemProperties.getInt("EmployeeInfo_batchSize", 100));
+    		boolean autoCommit = con.getAutoCommit();
+    		try {
+    			con.setAutoCommit(false);
+    			int failed = failures.size();
+    			int retried = retries != null ? retries.size() : 0;
+    			writeGroup(ps, insert, batched, batchSize, failures, retries, committed);
+    			retried = retries != null ? retries.size() - retried : 0;
+    			logger.info("Successfully upserted " + (batched.size() - (failures.size() - failed) - retried) + " employees, "
+    					+ (failures.size() - failed) + " rejected by the database, " + retried + " to retry");
+    		} finally {
+    			// A lost connection was dropped, its replacement starts in auto-commit
+    			if (con != null) {
+    				con.setAutoCommit(autoCommit);
+    			}
+    		}
+    		
+    	} catch (Exception ex) {
+    		executed = "Error upserting employees: " + ex.toString();
+    		boolean retry = retries != null && RetryPolicy.isTransient(ex);
+    		if (ex instanceof SQLException && RetryPolicy.isConnectionLost((SQLException) ex)) {
+    			resetConnection();
+    		}
+    		logger.severe(executed);
+    		if (!retry) {
+    			EmployeeInfoController.addError(executed);
+    		}
+    		
+    		Set<EmployeeInfo> settled = Collections.newSetFromMap(new IdentityHashMap<EmployeeInfo, Boolean>());
+    		settled.addAll(failures);
+    		if (retries != null) {
+    			settled.addAll(retries);
+    		}
+    		settled.addAll(committed);
+    		for (EmployeeInfo e : chunk) {
+    			if (!settled.contains(e)) {
+    				e.setError(executed);
+    				(retry ? retries : failures).add(e);
+    			}
+    		}
+    	}
+    	
+    	return failures;
     }
     
     /**
-     * Updates an existing employee record in the database
+     * Writes a group of validated employees with one commit
      * 
-     * This method:
-     * 1. Validates that required fields are present
-     * 2. Checks if the employee exists, if not, calls insertEmployee
-     * 3. Updates the employee data in relation_master table
-     * 4. If skill information is provided, calls insertSkill method
+     * Employees the directory knows go through the MERGE, the others through the INSERT, and
+     * their codes join the directory once the commit is done. If the group fails it is rolled
+     * back and each half is written again as its own transaction, so a bad row costs a few extra
+     * round trips instead of one commit per row. A single row whose insert hits an existing key
+     * (inserted since the directory was loaded) is written again with the MERGE. A group failing
+     * for a transient reason is not split, it goes to retries as a whole; after a lost connection
+     * the rest of the chunk does too, the statements of that connection being unusable.
      * 
-     * @param e The EmployeeInfo object containing updated employee details
-     * @return A string indicating the result of the operation ("OK" or error message)
+     * @param ps The prepared MERGE_EMPLOYEE statement
+     * @param insert The prepared INSERT_EMPLOYEE statement, or null to MERGE every row
+     * @param group The employees to write
+     * @param batchSize The number of rows per executeBatch
+     * @param failures Receives the employees the database rejects
+     * @param retries Receives the employees worth another attempt, or null to count them as failures
+     * @param committed Receives the employees once their group has committed
+     * @throws SQLException If the group cannot even be rolled back
      */
-    public String updateEmployee(EmployeeInfo e) {
-    	executed = "OK";
-        
-        // Validate required fields
-        if (!checkMinValue(e)) {
-            executed = "Cannot update Employee due to missing required fields: employeeId or relationCode";
-            logger.severe(executed);
-            EmployeeInfoController.addError(executed);
-            return executed;
-        }
-        
-        EntityTransaction transaction = null;
-        
-        try {
-        	
-        	// Parse dates from CSV
-	        	LocalDate birthDate = null;
-	            if (e.getDateOfBirth() != null && !e.getDateOfBirth().isEmpty()) {
-	                try {
-	                    int age = Integer.parseInt(e.getDateOfBirth().trim());
-	                    int currentYear = LocalDate.now().getYear();
-	                    int birthYear = currentYear - age;
-	                    birthDate = LocalDate.of(birthYear, 1, 1); // January 1st of calculated year
-	                    logger.info("Calculated birth date for employee " + e.getEmployeeId() + 
-	                               ": age " + age + " -> birth date " + birthDate);
-	                } catch (NumberFormatException nfe) {
-	                    logger.warning("Invalid age format for employee " + e.getEmployeeId() + 
-	                                  ": " + e.getDateOfBirth() + ". Birth date will be set to null.");
-	                    birthDate = null;
-	                }
-	            }
-                LocalDateTime hiredLdt = (e.getDateHired() != null && !e.getDateHired().isEmpty())
-                    ? LocalDateTime.parse(e.getDateHired(), CSV_FMT)
-                    : null;
-                LocalDateTime termLdt = (e.getDateTerminated() != null && !e.getDateTerminated().isEmpty())
-                    ? LocalDateTime.parse(e.getDateTerminated(), CSV_FMT)
-                    : null;
-
-            
-            // Verify the employee exists in the database
-            String checkQuery = "SELECT COUNT(*) FROM relation_master WHERE relation_code = ? AND relation_transaction = 'EMPLOYEE'";
-            PreparedStatement ps = con.prepareStatement(checkQuery);
-            ps.setString(1, e.getRelationCode());
-            
-            ResultSet rs = ps.executeQuery();
-            int count = 0;
-            
-            if (rs.next()) {
-                count = rs.getInt(1);
-            }
-            
-            rs.close();
-            ps.close();
-            
-            // If employee doesn't exist, insert instead of update
-            if (count == 0) {
-                logger.warning("Employee not found with relationCode: " + e.getRelationCode() + ". Proceeding to insert.");
-                return insertEmployee(e);
-            }
-            
-            // Begin transaction
-            transaction = em.getTransaction();
-            if (!transaction.isActive()) {
-                transaction.begin();
-            }
-            
-            // Prepare the SQL update query with named parameters
-            Query updateQuery = em.createNativeQuery(
-            		 "UPDATE relation_master SET " +
-            	                " name = :fullName, first_name = :firstName, last_name = :lastName, " +
-            	                " ldap_username = :ldap_username, employee_id = :employeeId, " +
-            	                " related_location = :relatedLocation, position = :position, " +
-            	                " department = :department, division = :division, " +
-            	                " mail_phone = :mailPhone, mail_email = :mailEmail, " +
-            	                " date_of_birth = :birthdate, date_hired = :dateHired, date_terminated = :dateTerminated, " +
-            	                " gst_gl_company = :companyName, cost_center = :costCode, " +
-            	                " status = :status, modified_by = 'TRAX_IFACE', modified_date = SYSDATE, " +
-            	                " allow_issue_to = 'YES' " +
-            	                "WHERE relation_code = :relationCode AND relation_transaction = 'EMPLOYEE'"
-            	            );
-            
-            // Set parameters, handling null values appropriately
-            updateQuery.setParameter("relationCode", e.getRelationCode());
-            updateQuery.setParameter("fullName", e.getFullName() != null ? e.getFullName() : "");
-            updateQuery.setParameter("firstName", e.getFirstName() != null ? e.getFirstName() : "");
-            updateQuery.setParameter("lastName", e.getLastName() != null ? e.getLastName() : "");
-            updateQuery.setParameter("employeeId", e.getRelationCode());
-            updateQuery.setParameter("ldap_username", e.getEmployeeId() != null ? e.getEmployeeId() : "");
-            updateQuery.setParameter("relatedLocation", e.getRelatedLocation() != null ? e.getRelatedLocation() : "");
-            updateQuery.setParameter("position", e.getPosition() != null ? e.getPosition() : "");
-            updateQuery.setParameter("department", e.getDepartment() != null ? e.getDepartment() : "");
-            //updateQuery.setParameter("departmentDescription", e.getDepartmentDescription() != null ? e.getDepartmentDescription() : "");
-            updateQuery.setParameter("division", e.getDivision() != null ? e.getDivision() : "");
-            //updateQuery.setParameter("divisionDescription", e.getDivisionDescription() != null ? e.getDivisionDescription() : "");
-            updateQuery.setParameter("mailPhone", e.getMailPhone() != null ? e.getMailPhone() : "");
-            updateQuery.setParameter("mailEmail", e.getMailEmail() != null ? e.getMailEmail() : "");
-            updateQuery.setParameter("companyName", e.getCostCode() != null ? e.getCostCode() : "");
-            updateQuery.setParameter("costCode", e.getCostCode() != null ? e.getCostCode() : "");
-            // Convert status code (1=ACTIVE, other=INACTIVE) or default to ACTIVE
-            updateQuery.setParameter("status",
-            	    e.getStatus() != null
-        	        ? (e.getStatus().equals("1") ? "ACTIVE" : "INACTIVE")
-        	        : "ACTIVE"
-        	);
-            //updateQuery.setParameter("profile", e.getProfile() != null ? e.getProfile() : "");
-            
-            // Date binds with TemporalType overload for nulls
-            if (birthDate != null) {
-            	updateQuery.setParameter("birthdate", Date.valueOf(birthDate));
-            } else {
-            	updateQuery.setParameter("birthdate", (java.util.Date) null, TemporalType.DATE);
-            }
-
-            if (hiredLdt != null) {
-            	updateQuery.setParameter("dateHired", Timestamp.valueOf(hiredLdt));
-            } else {
-            	updateQuery.setParameter("dateHired", (java.util.Date) null, TemporalType.TIMESTAMP);
-            }
-
-            if (termLdt != null) {
-            	updateQuery.setParameter("dateTerminated", Timestamp.valueOf(termLdt));
-            } else {
-            	updateQuery.setParameter("dateTerminated", (java.util.Date) null, TemporalType.TIMESTAMP);
-            }
-
-           
-            
-            // Execute the update query
-            int rowsAffected = updateQuery.executeUpdate();
-            
-            // Commit the transaction
-            transaction.commit();
-            
-            logger.info("Successfully updated employee: " + e.getEmployeeId() + " with relation code: " + e.getRelationCode() + ". Rows affected: " + rowsAffected);
-            
-            // If skill information is provided, insert it
-            if (e.getSkill() != null && !e.getSkill().isEmpty()) {
-                insertSkill(e);
-            }
-            
-        } catch (Exception ex) {
-            // Rollback transaction in case of error
-            if (transaction != null && transaction.isActive()) {
-                transaction.rollback();
-            }
-            executed = "Error updating employee: " + ex.toString();
-            logger.severe(executed);
-            EmployeeInfoController.addError(executed);
-        }
-        
-        return executed;
-   	
-   }
+    private void writeGroup(PreparedStatement ps, PreparedStatement insert, List<EmployeeInfo> group, int batchSize,
+    		List<EmployeeInfo> failures, List<EmployeeInfo> retries, Set<EmployeeInfo> committed) throws SQLException {
+    	if (connectionLost) {
+    		deferGroup(group, "Error inserting employee: connection lost", failures, retries);
+    		return;
+    	}
+    	long start = System.nanoTime();
+    	List<EmployeeInfo> inserted = new ArrayList<EmployeeInfo>();
+    	try {
+    		int merges = 0;
+    		for (EmployeeInfo e : group) {
+    			if (insert != null && !employees.contains(e.getRelationCode())) {
+    				bindEmployee(insert, e);
+    				insert.addBatch();
+    				inserted.add(e);
+    				if (inserted.size() % batchSize == 0) {
+    					RunMetrics.roundTrip("employee.insert");
+    					insert.executeBatch();
+    				}
+    				continue;
+    			}
+    			bindEmployee(ps, e);
+    			ps.addBatch();
+    			if (++merges % batchSize == 0) {
+    				RunMetrics.roundTrip("employee.merge");
+    				ps.executeBatch();
+    			}
+    		}
+    		if (merges % batchSize != 0) {
+    			RunMetrics.roundTrip("employee.merge");
+    			ps.executeBatch();
+    		}
+    		if (inserted.size() % batchSize != 0) {
+    			RunMetrics.roundTrip("employee.insert");
+    			insert.executeBatch();
+    		}
+    		RunMetrics.roundTrip("commit");
+    		con.commit();
+    		committed.addAll(group);
+    		for (EmployeeInfo e : inserted) {
+    			employees.add(e.getRelationCode());
+    		}
+    		RunMetrics.count("rows.inserted", inserted.size());
+    		if (limiter != null) {
+    			limiter.sample(System.nanoTime() - start, group.size());
+    		}
+    	} catch (SQLException ex) {
+    		if (limiter != null) {
+    			limiter.error(ex);
+    		}
+    		if (RetryPolicy.isConnectionLost(ex)) {
+    			connectionLost = true;
+    			resetConnection();
+    			deferGroup(group, "Error inserting employee: " + ex.toString(), failures, retries);
+    			return;
+    		}
+    		ps.clearBatch();
+    		if (insert != null) {
+    			insert.clearBatch();
+    		}
+    		con.rollback();
+    		
+    		if (retries != null && RetryPolicy.isTransient(ex)) {
+    			logger.warning("Upsert of " + group.size() + " employees hit a transient error, retrying them later: " + ex.toString());
+    			deferGroup(group, "Error inserting employee: " + ex.toString(), failures, retries);
+    			return;
+    		}
+    		if (group.size() == 1) {
+    			EmployeeInfo e = group.get(0);
+    			if (!inserted.isEmpty() && isDuplicateKey(ex)) {
+    				logger.warning("Employee with relationCode: " + e.getRelationCode() + " already exists. Redirecting to update.");
+    				employees.add(e.getRelationCode());
+    				writeGroup(ps, insert, group, batchSize, failures, retries, committed);
+    				return;
+    			}
+    			executed = "Error inserting employee: " + e.getRelationCode() + " " + ex.toString();
+    			logger.severe(executed);
+    			EmployeeInfoController.addError(e, executed);
+    			failures.add(e);
+    			return;
+    		}
+    		logger.warning("Upsert of " + group.size() + " employees failed, splitting it: " + ex.toString());
+    		int half = group.size() / 2;
+    		writeGroup(ps, insert, group.subList(0, half), batchSize, failures, retries, committed);
+    		writeGroup(ps, insert, group.subList(half, group.size()), batchSize, failures, retries, committed);
+    	}
+    }
+    
+    // Hands a group that was not written to the retries, or to the failures when it is not retried
+    private void deferGroup(List<EmployeeInfo> group, String error, List<EmployeeInfo> failures, List<EmployeeInfo> retries) {
+    	for (EmployeeInfo e : group) {
+    		if (retries != null) {
+    			e.setError(error);
+    			retries.add(e);
+    		} else {
+    			executed = error;
+    			EmployeeInfoController.addError(e, error);
+    			failures.add(e);
+    		}
+    	}
+    }
+    
+    private static boolean isDuplicateKey(SQLException ex) {
+    	return ex.getErrorCode() == 1 || String.valueOf(ex.getMessage()).contains("ORA-00001");
+    }
+    
+    /**
+     * Checks the department, division, position and company transcodes of an employee,
+     * inserting the ones that are missing. Failures are logged but do not stop the employee,
+     * they only mark it incomplete so it is loaded again with the next file.
+     * 
+     * @param e The EmployeeInfo object containing the transcodes
+     */
+    private void checkTranscodes(EmployeeInfo e) {
+    	if (e.getDepartment() != null && !e.getDepartment().isEmpty()
+    			&& !findTranscodeDepartment(e).equals("OK")) {
+    		logger.warning("TranCode validation failed for Department: " + e.getDepartment());
+    		e.setIncomplete(true);
+    	}
+    	if (e.getDivision() != null && !e.getDivision().isEmpty()
+    			&& !findTranscodeDivision(e).equals("OK")) {
+    		logger.warning("TranCode validation failed for Division: " + e.getDivision());
+    		e.setIncomplete(true);
+    	}
+    	if (e.getPosition() != null && !e.getPosition().isEmpty()
+    			&& !findTrancodePosition(e).equals("OK")) {
+    		logger.warning("TranCode validation failed for Position: " + e.getPosition());
+    		e.setIncomplete(true);
+    	}
+    	if (e.getCostCode() != null && !e.getCostCode().isEmpty()
+    			&& !findTranscodeCompany(e).equals("OK")) {
+    		logger.warning("TranCode validation failed for Company: " + e.getCostCode());
+    		e.setIncomplete(true);
+    	}
+    }
+    
+    /**
+     * Binds the values of an employee to the MERGE_EMPLOYEE statement
+     * 
+     * @param ps The prepared MERGE_EMPLOYEE statement
+     * @param e The EmployeeInfo object to bind
+     * @throws SQLException If a value cannot be bound
+     */
+    private void bindEmployee(PreparedStatement ps, EmployeeInfo e) throws SQLException {
+    	LocalDate birthDate = parseBirthDate(e);
+    	LocalDateTime hiredLdt = parseDateTime(e.getDateHired());
+    	LocalDateTime termLdt = parseDateTime(e.getDateTerminated());
+    	
+    	ps.setString(1, e.getRelationCode());
+    	ps.setString(2, e.getFullName() != null ? e.getFullName() : "");
+    	ps.setString(3, e.getEmployeeId() != null ? e.getEmployeeId() : "");
+    	ps.setString(4, e.getFirstName() != null ? e.getFirstName() : "");
+    	ps.setString(5, e.getLastName() != null ? e.getLastName() : "");
+    	ps.setString(6, e.getRelatedLocation() != null ? e.getRelatedLocation() : "");
+    	ps.setString(7, e.getPosition() != null ? e.getPosition() : "");
+    	ps.setString(8, e.getDepartment() != null ? e.getDepartment() : "");
+    	ps.setString(9, e.getDivision() != null ? e.getDivision() : "");
+    	ps.setString(10, e.getMailPhone() != null ? e.getMailPhone() : "");
+    	ps.setString(11, e.getMailEmail() != null ? e.getMailEmail() : "");
+    	
+    	if (birthDate != null) {
+    		ps.setDate(12, Date.valueOf(birthDate));
+    	} else {
+    		ps.setNull(12, Types.DATE);
+    	}
+    	if (hiredLdt != null) {
+    		ps.setTimestamp(13, Timestamp.valueOf(hiredLdt));
+    	} else {
+    		ps.setNull(13, Types.TIMESTAMP);
+    	}
+    	if (termLdt != null) {
+    		ps.setTimestamp(14, Timestamp.valueOf(termLdt));
+    	} else {
+    		ps.setNull(14, Types.TIMESTAMP);
+    	}
+    	
+    	ps.setString(15, e.getCostCode() != null ? e.getCostCode() : "");
+    	// Convert status code (1=ACTIVE, other=INACTIVE) or default to ACTIVE
+    	ps.setString(16, e.getStatus() != null
+    			? (e.getStatus().equals("1") ? "ACTIVE" : "INACTIVE")
+    			: "ACTIVE");
+    }
+    
+    /**
+     * Parses a date of the CSV file
+     * 
+     * @param value The date as sent in the file
+     * @return The date, or null if the value is missing
+     * @throws DateTimeParseException If the value is not a valid date
+     */
+    private static LocalDateTime parseDateTime(String value) {
+    	return value != null && !value.isEmpty() ? LocalDateTime.parse(value, CSV_FMT) : null;
+    }
+    
+    /**
+     * Derives the birth date from the age sent in the DATE_OF_BIRTH column (January 1st of the calculated year)
+     * 
+     * @param e The EmployeeInfo object containing the age
+     * @return The calculated birth date, or null if the age is missing or invalid
+     */
+    private LocalDate parseBirthDate(EmployeeInfo e) {
+    	if (e.getDateOfBirth() == null || e.getDateOfBirth().isEmpty()) {
+    		return null;
+    	}
+    	try {
+    		int age = Integer.parseInt(e.getDateOfBirth().trim());
+    		return LocalDate.of(LocalDate.now().getYear() - age, 1, 1);
+    	} catch (NumberFormatException nfe) {
+    		logger.warning("Invalid age format for employee " + e.getEmployeeId() + 
+    				": " + e.getDateOfBirth() + ". Birth date will be set to null.");
+    		return null;
+    	}
+    }
     
     /**
      * Inserts skill information for an employee
@@ -974,7 +862,7 @@ public class EmployeeInfoData {
     	        e.getSkill() == null || e.getSkill().isEmpty()) {
     	        executed = "Cannot insert Skill: relationCode and skill cannot be null or empty";
     	        logger.severe(executed);
-    	        EmployeeInfoController.addError(executed);
+    	        EmployeeInfoController.addError(e, executed);
     	        return executed;
     	    }
     	    
@@ -990,7 +878,7 @@ public class EmployeeInfoData {
     	        String checkQuery = "SELECT COUNT(*) FROM employee_skill " +
     	                           "WHERE employee = ? AND skill = ?";
     	        
-    	        PreparedStatement ps = con.prepareStatement(checkQuery);
+    	        PreparedStatement ps = prepare(checkQuery);
     	        ps.setString(1, e.getRelationCode());
     	        ps.setString(2, e.getSkill());
     	        
@@ -1002,7 +890,6 @@ public class EmployeeInfoData {
     	        }
     	        
     	        rs.close();
-    	        ps.close();
     	        
     	        // If skill already exists for this employee, return a warning
     	        if (count > 0) {
@@ -1050,13 +937,13 @@ public class EmployeeInfoData {
     	            }
     	            executed = "Error inserting skill: " + ex.toString();
     	            logger.severe(executed);
-    	            EmployeeInfoController.addError(executed);
+    	            EmployeeInfoController.addError(e, executed);
     	        }
     	        
     	    } catch (Exception ex) {
     	        executed = "Error checking for existing skill: " + ex.toString();
     	        logger.severe(executed);
-    	        EmployeeInfoController.addError(executed);
+    	        EmployeeInfoController.addError(e, executed);
     	    }
     	    
     	    return executed;
@@ -1080,7 +967,7 @@ public class EmployeeInfoData {
     	  if (e.getSkill() == null || e.getSkill().isEmpty()) {
     	      executed = "Cannot insert SkillMaster: skill cannot be null or empty";
     	      logger.severe(executed);
-    	      EmployeeInfoController.addError(executed);
+    	      EmployeeInfoController.addError(e, executed);
     	      return executed;
     	  }
     	    
@@ -1088,7 +975,7 @@ public class EmployeeInfoData {
     	      // Check if skill already exists in skill_master table
     	      String checkQuery = "SELECT COUNT(*) FROM skill_master WHERE skill = ?";
     	        
-    	      PreparedStatement ps = con.prepareStatement(checkQuery);
+    	      PreparedStatement ps = prepare(checkQuery);
     	      ps.setString(1, e.getSkill());
     	        
     	      ResultSet rs = ps.executeQuery();
@@ -1099,7 +986,6 @@ public class EmployeeInfoData {
     	      }
     	        
     	      rs.close();
-    	      ps.close();
     	        
     	      // If skill already exists in skill_master, no need to insert
     	      if (count > 0) {
@@ -1145,18 +1031,519 @@ public class EmployeeInfoData {
     	          }
     	          executed = "Error inserting skill in SKILL_MASTER: " + ex.toString();
     	          logger.severe(executed);
-    	          EmployeeInfoController.addError(executed);
+    	          EmployeeInfoController.addError(e, executed);
     	      }
     	        
     	  } catch (Exception ex) {
     	      executed = "Error checking for existing skill in SKILL_MASTER: " + ex.toString();
     	      logger.severe(executed);
-    	      EmployeeInfoController.addError(executed);
+    	      EmployeeInfoController.addError(e, executed);
     	  }
     	    
     	  return executed;
     }
     
+    // Oracle accepts at most 1000 expressions in an IN list
+    private static final int IN_LIST_SIZE = 1000;
+    
+    private static final String INSERT_SKILL_MASTER =
+    		"INSERT INTO skill_master (" +
+    		"  skill, skill_description, status, created_by, created_date, modified_by, modified_date, MECHANIC, INSPECTOR, ETOPS, DEFECT" +
+    		") VALUES (" +
+    		"  ?, ?, 'ACTIVE', 'TRAX_IFACE', SYSDATE, 'TRAX_IFACE', SYSDATE, 'Y', 'Y', 'N', 'N'" +
+    		")";
+    
+    private static final String INSERT_EMPLOYEE_SKILL =
+    		"INSERT INTO employee_skill (" +
+    		"  employee, skill, created_by, created_date, modified_by, modified_date, AC_TYPE, AC_SERIES" +
+    		") VALUES (" +
+    		"  ?, ?, 'TRAX_IFACE', SYSDATE, 'TRAX_IFACE', SYSDATE, '          ', '          ' " +
+    		")";
+    
+    /**
+     * Makes sure every skill of the given employees is in skill_master and assigned in employee_skill
+     * 
+     * This method:
+     * 1. Collects the distinct skills and (employee, skill) pairs
+     * 2. Loads the ones that already exist with IN-list queries of up to 1000 codes
+     * 3. Batch-inserts the missing skills, then the missing pairs, each in one transaction
+     * 
+     * If a batch fails it is rolled back and its rows are replayed through insertSkillMaster
+     * and insertSkill, so that only the employees that really fail are reported.
+     * 
+     * @param employees The committed employees of a chunk that have a skill
+     * @return The employees whose skill could not be inserted
+     */
+    public List<EmployeeInfo> syncSkills(Collection<EmployeeInfo> employees) {
+    	List<EmployeeInfo> failures = new ArrayList<EmployeeInfo>();
+    	Map<String, EmployeeInfo> skills = new LinkedHashMap<String, EmployeeInfo>();
+    	Map<String, List<EmployeeInfo>> pairs = new LinkedHashMap<String, List<EmployeeInfo>>();
+    	Set<String> relationCodes = new LinkedHashSet<String>();
+    	
+    	for (EmployeeInfo e : employees) {
+    		if (e.getRelationCode() == null || e.getRelationCode().isEmpty() ||
+    				e.getSkill() == null || e.getSkill().isEmpty()) {
+    			executed = "Cannot insert Skill: relationCode and skill cannot be null or empty";
+    			logger.severe(executed);
+    			EmployeeInfoController.addError(e, executed);
+    			failures.add(e);
+    			continue;
+    		}
+    		if (!skills.containsKey(e.getSkill())) {
+    			skills.put(e.getSkill(), e);
+    		}
+    		String pair = e.getRelationCode() + '\u0001' + e.getSkill();
+    		List<EmployeeInfo> holders = pairs.get(pair);
+    		if (holders == null) {
+    			holders = new ArrayList<EmployeeInfo>(1);
+    			pairs.put(pair, holders);
+    		}
+    		holders.add(e);
+    		relationCodes.add(e.getRelationCode());
+    	}
+    	
+    	if (skills.isEmpty()) {
+    		return failures;
+    	}
+    	
+    	try {
+    		// Skills missing from skill_master, every one of them needed by at least one pair
+    		Set<String> existingSkills = selectExisting("SELECT skill FROM skill_master WHERE skill IN ", skills.keySet());
+    		List<EmployeeInfo> newSkills = new ArrayList<EmployeeInfo>();
+    		for (Map.Entry<String, EmployeeInfo> skill : skills.entrySet()) {
+    			if (!existingSkills.contains(skill.getKey())) {
+    				newSkills.add(skill.getValue());
+    			}
+    		}
+    		
+    		Set<String> failedSkills = new HashSet<String>();
+    		if (!newSkills.isEmpty()) {
+    			if (!insertBatch(INSERT_SKILL_MASTER, newSkills, true)) {
+    				for (EmployeeInfo e : newSkills) {
+    					if (!"OK".equals(insertSkillMaster(e))) {
+    						failedSkills.add(e.getSkill());
+    					}
+    				}
+    			}
+    			logger.info("Inserted " + (newSkills.size() - failedSkills.size()) + " skills in SKILL_MASTER");
+    		}
+    		
+    		// Pairs missing from employee_skill
+    		Set<String> existingPairs = selectExisting("SELECT employee || CHR(1) || skill FROM employee_skill WHERE employee IN ", relationCodes);
+    		List<EmployeeInfo> newPairs = new ArrayList<EmployeeInfo>();
+    		for (Map.Entry<String, List<EmployeeInfo>> pair : pairs.entrySet()) {
+    			EmployeeInfo e = pair.getValue().get(0);
+    			if (failedSkills.contains(e.getSkill())) {
+    				executed = "Cannot insert Skill: " + e.getSkill() + " could not be inserted in SKILL_MASTER";
+    				EmployeeInfoController.addError(e, executed);
+    				failures.addAll(pair.getValue());
+    			} else if (!existingPairs.contains(pair.getKey())) {
+    				newPairs.add(e);
+    			}
+    		}
+    		
+    		if (!newPairs.isEmpty()) {
+    			if (!insertBatch(INSERT_EMPLOYEE_SKILL, newPairs, false)) {
+    				for (EmployeeInfo e : newPairs) {
+    					if (!"OK".equals(insertSkill(e))) {
+    						failures.addAll(pairs.get(e.getRelationCode() + '\u0001' + e.getSkill()));
+    					}
+    				}
+    			}
+    			logger.info("Assigned " + newPairs.size() + " skills in EMPLOYEE_SKILL");
+    		}
+    		
+    	} catch (Exception ex) {
+    		executed = "Error synchronising skills: " + ex.toString();
+    		logger.severe(executed);
+    		EmployeeInfoController.addError(executed);
+    		
+    		Set<EmployeeInfo> failed = Collections.newSetFromMap(new IdentityHashMap<EmployeeInfo, Boolean>());
+    		failed.addAll(failures);
+    		for (List<EmployeeInfo> holders : pairs.values()) {
+    			for (EmployeeInfo e : holders) {
+    				if (failed.add(e)) {
+    					e.setError(executed);
+    					failures.add(e);
+    				}
+    			}
+    		}
+    	}
+    	
+    	return failures;
+    }
+    
+    /**
+     * Runs a single-column query for a set of codes, 1000 codes per execution
+     * 
+     * The IN list always has 1000 placeholders, padded with the last code, so a single
+     * statement is prepared whatever the number of codes.
+     * 
+     * @param select The query up to and excluding the IN list
+     * @param codes The codes to look up
+     * @return The values returned by the query
+     * @throws Exception If a query fails
+     */
+    private Set<String> selectExisting(String select, Collection<String> codes) throws Exception {
+    	StringBuilder sql = new StringBuilder(select).append('(');
+    	for (int i = 0; i < IN_LIST_SIZE; i++) {
+    		sql.append(i == 0 ? "?" : ",?");
+    	}
+    	sql.append(')');
+    	PreparedStatement ps = prepare(sql.toString());
+    	
+    	Set<String> found = new HashSet<String>();
+    	List<String> list = new ArrayList<String>(codes);
+    	for (int start = 0; start < list.size(); start += IN_LIST_SIZE) {
+    		int end = Math.min(start + IN_LIST_SIZE, list.size());
+    		for (int i = 0; i < IN_LIST_SIZE; i++) {
+    			ps.setString(i + 1, list.get(Math.min(start + i, end - 1)));
+    		}
+    		RunMetrics.roundTrip("skill.select");
+    		ResultSet rs = ps.executeQuery();
+    		while (rs.next()) {
+    			found.add(rs.getString(1));
+    		}
+    		rs.close();
+    	}
+    	return found;
+    }
+    
+    /**
+     * Inserts one row per employee with a JDBC batch, committed once
+     * 
+     * @param sql INSERT_SKILL_MASTER or INSERT_EMPLOYEE_SKILL
+     * @param rows The employees to insert the rows of
+     * @param master true to bind (skill, description), false to bind (relation code, skill)
+     * @return false if the batch failed and was rolled back
+     * @throws Exception If the statement cannot be prepared
+     */
+    private boolean insertBatch(String sql, List<EmployeeInfo> rows, boolean master) throws Exception {
+    	PreparedStatement ps = prepare(sql);
+    	for (EmployeeInfo e : rows) {
+    		if (master) {
+    			ps.setString(1, e.getSkill());
+    			ps.setString(2, e.getSkillDescription() != null ? e.getSkillDescription() : e.getSkill());
+    		} else {
+    			ps.setString(1, e.getRelationCode());
+    			ps.setString(2, e.getSkill());
+    		}
+    		ps.addBatch();
+    	}
+    	
+    	boolean autoCommit = con.getAutoCommit();
+    	try {
+    		con.setAutoCommit(false);
+    		RunMetrics.roundTrip("skill.insert");
+    		ps.executeBatch();
+    		RunMetrics.roundTrip("commit");
+    		con.commit();
+    		return true;
+    	} catch (SQLException ex) {
+    		con.rollback();
+    		ps.clearBatch();
+    		logger.warning("Batch insert of " + rows.size() + " rows failed, retrying row by row: " + ex.toString());
+    		return false;
+    	} finally {
+    		con.setAutoCommit(autoCommit);
+    	}
+    }
+    
+    // Staging-table (bulk) load mode, see EMPLOYEE_INFO_STAGE in INTERFACE SCRIPT.sql
+    
+    private static final String INSERT_STAGE =
+    		"INSERT INTO employee_info_stage (" +
+    		"  row_no, relation_code, name, ldap_username, first_name, last_name, related_location," +
+    		"  position_code, position, department, department_description, division, division_description," +
+    		"  mail_phone, mail_email, date_of_birth, date_hired, date_terminated," +
+    		"  company_name, cost_code, skill, skill_description, status" +
+    		") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    private static final String STAGE_TRANSCODES =
+    		"INSERT INTO system_tran_code (" +
+    		"  system_transaction, system_code, system_code_description, pn_transaction, pn_costing_method," +
+    		"  created_by, created_date, system_tran_code_sub, status) " +
+    		"SELECT t.system_transaction, t.system_code, t.description, 'C', 'A', 'TRAX_IFACE', SYSDATE, 'I01', 'ACTIVE' " +
+    		"FROM (" +
+    		"  SELECT 'DEPARTMENT' AS system_transaction, department AS system_code, MAX(NVL(department_description, department)) AS description" +
+    		"  FROM employee_info_stage WHERE department IS NOT NULL GROUP BY department" +
+    		"  UNION ALL" +
+    		"  SELECT 'DEPDIVISION', division, MAX(NVL(division_description, division))" +
+    		"  FROM employee_info_stage WHERE division IS NOT NULL GROUP BY division" +
+    		"  UNION ALL" +
+    		"  SELECT 'EMPLPOS', position_code, MAX(NVL(position, position_code))" +
+    		"  FROM employee_info_stage WHERE position_code IS NOT NULL GROUP BY position_code" +
+    		"  UNION ALL" +
+    		"  SELECT 'ORDERCATEGORY', cost_code, MAX(NVL(company_name, cost_code))" +
+    		"  FROM employee_info_stage WHERE cost_code IS NOT NULL GROUP BY cost_code" +
+    		") t " +
+    		"WHERE NOT EXISTS (SELECT 1 FROM system_tran_code c" +
+    		"  WHERE c.system_transaction = t.system_transaction AND c.system_code = t.system_code)";
+    
+    // The last row of an employee wins when the file holds it more than once
+    private static final String STAGE_EMPLOYEES =
+    		"MERGE INTO relation_master rm " +
+    		"USING (SELECT * FROM (" +
+    		"  SELECT s.*, ROW_NUMBER() OVER (PARTITION BY s.relation_code ORDER BY s.row_no DESC) AS rn" +
+    		"  FROM employee_info_stage s) WHERE rn = 1) src " +
+    		MERGE_ACTIONS +
+    		" LOG ERRORS INTO err$_relation_master (?) REJECT LIMIT UNLIMITED";
+    
+    private static final String STAGE_SKILL_MASTER =
+    		"INSERT INTO skill_master (" +
+    		"  skill, skill_description, status, created_by, created_date, modified_by, modified_date, MECHANIC, INSPECTOR, ETOPS, DEFECT) " +
+    		"SELECT s.skill, MAX(NVL(s.skill_description, s.skill)), 'ACTIVE', 'TRAX_IFACE', SYSDATE, 'TRAX_IFACE', SYSDATE, 'Y', 'Y', 'N', 'N' " +
+    		"FROM employee_info_stage s " +
+    		"WHERE s.skill IS NOT NULL " +
+    		"AND NOT EXISTS (SELECT 1 FROM skill_master sm WHERE sm.skill = s.skill) " +
+    		"GROUP BY s.skill";
+    
+    private static final String STAGE_EMPLOYEE_SKILLS =
+    		"INSERT INTO employee_skill (" +
+    		"  employee, skill, created_by, created_date, modified_by, modified_date, AC_TYPE, AC_SERIES) " +
+    		"SELECT p.relation_code, p.skill, 'TRAX_IFACE', SYSDATE, 'TRAX_IFACE', SYSDATE, '          ', '          ' " +
+    		"FROM (SELECT DISTINCT s.relation_code, s.skill FROM employee_info_stage s" +
+    		"  WHERE s.skill IS NOT NULL" +
+    		"  AND EXISTS (SELECT 1 FROM relation_master rm" +
+    		"    WHERE rm.relation_code = s.relation_code AND rm.relation_transaction = 'EMPLOYEE')" +
+    		"  AND NOT EXISTS (SELECT 1 FROM employee_skill es WHERE es.employee = s.relation_code AND es.skill = s.skill)) p " +
+    		"LOG ERRORS INTO err$_employee_skill (?) REJECT LIMIT UNLIMITED";
+    
+    /**
+     * Empties the session's staging table before a file is staged
+     * 
+     * @throws Exception If the table cannot be cleared
+     */
+    public void beginStage() throws Exception {
+    	RunMetrics.roundTrip("stage.clear");
+    	prepare("DELETE FROM employee_info_stage").executeUpdate();
+    	if (!con.getAutoCommit()) {
+    		con.commit();
+    	}
+    }
+    
+    /**
+     * Adds a chunk of employees to the session's staging table with a single JDBC batch
+     * 
+     * Values are validated and converted here, so the rows that cannot be staged are
+     * reported exactly like in the row-by-row mode.
+     * 
+     * @param chunk The employees to stage
+     * @return The employees that could not be staged
+     */
+    public List<EmployeeInfo> stageEmployees(List<EmployeeInfo> chunk) {
+    	List<EmployeeInfo> failures = new ArrayList<EmployeeInfo>();
+    	
+    	try {
+    		PreparedStatement ps = prepare(INSERT_STAGE);
+    		int batched = 0;
+    		
+    		for (EmployeeInfo e : chunk) {
+    			if (!checkMinValue(e)) {
+    				executed = "Cannot insert Employee due to missing required fields: employeeId or relationCode";
+    				logger.severe(executed);
+    				EmployeeInfoController.addError(e, executed);
+    				failures.add(e);
+    				continue;
+    			}
+    			
+    			try {
+    				bindStage(ps, e);
+    				ps.addBatch();
+    				batched++;
+    			} catch (Exception ex) {
+    				executed = "Error inserting employee: " + e.getRelationCode() + " " + ex.toString();
+    				logger.severe(executed);
+    				EmployeeInfoController.addError(e, executed);
+    				failures.add(e);
+    			}
+    		}
+    		
+    		if (batched > 0) {
+    			RunMetrics.roundTrip("stage.insert");
+    			ps.executeBatch();
+    		}
+    		
+    	} catch (Exception ex) {
+    		executed = "Error staging employees: " + ex.toString();
+    		logger.severe(executed);
+    		EmployeeInfoController.addError(executed);
+    		
+    		for (EmployeeInfo e : chunk) {
+    			if (!failures.contains(e)) {
+    				e.setError(executed);
+    				failures.add(e);
+    			}
+    		}
+    	}
+    	
+    	return failures;
+    }
+    
+    private void bindStage(PreparedStatement ps, EmployeeInfo e) throws SQLException {
+    	LocalDate birthDate = parseBirthDate(e);
+    	LocalDateTime hiredLdt = parseDateTime(e.getDateHired());
+    	LocalDateTime termLdt = parseDateTime(e.getDateTerminated());
+    	
+    	ps.setInt(1, e.getRowNumber());
+    	ps.setString(2, e.getRelationCode());
+    	ps.setString(3, e.getFullName());
+    	ps.setString(4, e.getEmployeeId());
+    	ps.setString(5, e.getFirstName());
+    	ps.setString(6, e.getLastName());
+    	ps.setString(7, e.getRelatedLocation());
+    	ps.setString(8, e.getPositionCode());
+    	ps.setString(9, e.getPosition());
+    	ps.setString(10, e.getDepartment());
+    	ps.setString(11, e.getDepartmentDescription());
+    	ps.setString(12, e.getDivision());
+    	ps.setString(13, e.getDivisionDescription());
+    	ps.setString(14, e.getMailPhone());
+    	ps.setString(15, e.getMailEmail());
+    	
+    	if (birthDate != null) {
+    		ps.setDate(16, Date.valueOf(birthDate));
+    	} else {
+    		ps.setNull(16, Types.DATE);
+    	}
+    	if (hiredLdt != null) {
+    		ps.setTimestamp(17, Timestamp.valueOf(hiredLdt));
+    	} else {
+    		ps.setNull(17, Types.TIMESTAMP);
+    	}
+    	if (termLdt != null) {
+    		ps.setTimestamp(18, Timestamp.valueOf(termLdt));
+    	} else {
+    		ps.setNull(18, Types.TIMESTAMP);
+    	}
+    	
+    	ps.setString(19, e.getCompanyName());
+    	ps.setString(20, e.getCostCode());
+    	ps.setString(21, e.getSkill());
+    	ps.setString(22, e.getSkillDescription());
+    	// Convert status code (1=ACTIVE, other=INACTIVE) or default to ACTIVE
+    	ps.setString(23, e.getStatus() != null
+    			? (e.getStatus().equals("1") ? "ACTIVE" : "INACTIVE")
+    			: "ACTIVE");
+    }
+    
+    /**
+     * Applies the staged employees with set-based statements, in one transaction
+     * 
+     * This method:
+     * 1. Inserts the missing DEPARTMENT, DEPDIVISION, EMPLPOS and ORDERCATEGORY transcodes
+     * 2. Merges every staged employee into relation_master
+     * 3. Inserts the missing skills in skill_master and assignments in employee_skill
+     * 4. Reads back the rows Oracle rejected from the DML error log tables
+     * 
+     * @param tag Identifies the file in the error log tables
+     * @param staged The employees staged for the file
+     * @return The staged employees that were rejected
+     */
+    public List<EmployeeInfo> reconcileStage(String tag, List<EmployeeInfo> staged) {
+    	List<EmployeeInfo> failures = new ArrayList<EmployeeInfo>();
+    	
+    	try {
+    		boolean autoCommit = con.getAutoCommit();
+    		try {
+    			con.setAutoCommit(false);
+    			
+    			RunMetrics.roundTrip("stage.apply");
+    			int transcodesInserted = prepare(STAGE_TRANSCODES).executeUpdate();
+    			
+    			PreparedStatement merge = prepare(STAGE_EMPLOYEES);
+    			merge.setString(1, tag);
+    			RunMetrics.roundTrip("stage.apply");
+    			int merged = merge.executeUpdate();
+    			
+    			RunMetrics.roundTrip("stage.apply");
+    			int skillsInserted = prepare(STAGE_SKILL_MASTER).executeUpdate();
+    			
+    			PreparedStatement skills = prepare(STAGE_EMPLOYEE_SKILLS);
+    			skills.setString(1, tag);
+    			RunMetrics.roundTrip("stage.apply");
+    			int assigned = skills.executeUpdate();
+    			
+    			RunMetrics.roundTrip("commit");
+    			con.commit();
+    			logger.info("Reconciled staged employees: " + transcodesInserted + " transcodes, " + merged + " employees, "
+    					+ skillsInserted + " skills, " + assigned + " skill assignments");
+    		} catch (SQLException ex) {
+    			con.rollback();
+    			throw ex;
+    		} finally {
+    			con.setAutoCommit(autoCommit);
+    		}
+    		
+    		// Rejected rows, logged by Oracle in autonomous transactions
+    		Map<String, List<EmployeeInfo>> byCode = new HashMap<String, List<EmployeeInfo>>();
+    		for (EmployeeInfo e : staged) {
+    			List<EmployeeInfo> holders = byCode.get(e.getRelationCode());
+    			if (holders == null) {
+    				holders = new ArrayList<EmployeeInfo>(1);
+    				byCode.put(e.getRelationCode(), holders);
+    			}
+    			holders.add(e);
+    		}
+    		Set<EmployeeInfo> failed = Collections.newSetFromMap(new IdentityHashMap<EmployeeInfo, Boolean>());
+    		collectRejected("SELECT relation_code, ora_err_mesg$ FROM err$_relation_master WHERE ora_err_tag$ = ?",
+    				"DELETE FROM err$_relation_master WHERE ora_err_tag$ = ?", tag, "Error inserting employee: ", byCode, failed, failures);
+    		collectRejected("SELECT employee, ora_err_mesg$ FROM err$_employee_skill WHERE ora_err_tag$ = ?",
+    				"DELETE FROM err$_employee_skill WHERE ora_err_tag$ = ?", tag, "Error inserting skill: ", byCode, failed, failures);
+    		
+    	} catch (Exception ex) {
+    		executed = "Error reconciling staged employees: " + ex.toString();
+    		logger.severe(executed);
+    		EmployeeInfoController.addError(executed);
+    		
+    		failures.clear();
+    		for (EmployeeInfo e : staged) {
+    			e.setError(executed);
+    			failures.add(e);
+    		}
+    	} finally {
+    		try {
+    			beginStage();
+    		} catch (Exception ex) {
+    			logger.warning("Could not clear the staging table: " + ex.toString());
+    		}
+    	}
+    	
+    	return failures;
+    }
+    
+    private void collectRejected(String select, String delete, String tag, String prefix,
+    		Map<String, List<EmployeeInfo>> byCode, Set<EmployeeInfo> failed, List<EmployeeInfo> failures) throws Exception {
+    	PreparedStatement ps = prepare(select);
+    	ps.setString(1, tag);
+    	RunMetrics.roundTrip("stage.errlog");
+    	ResultSet rs = ps.executeQuery();
+    	int rejected = 0;
+    	while (rs.next()) {
+    		rejected++;
+    		List<EmployeeInfo> holders = byCode.get(rs.getString(1));
+    		if (holders == null) {
+    			continue;
+    		}
+    		for (EmployeeInfo e : holders) {
+    			EmployeeInfoController.addError(e, prefix + e.getRelationCode() + " " + rs.getString(2).trim());
+    			if (failed.add(e)) {
+    				failures.add(e);
+    			}
+    		}
+    	}
+    	rs.close();
+    	
+    	if (rejected > 0) {
+    		PreparedStatement cleanup = prepare(delete);
+    		cleanup.setString(1, tag);
+    		cleanup.executeUpdate();
+    		if (!con.getAutoCommit()) {
+    			con.commit();
+    		}
+    	}
+    }
+    
  // Insert generic data into the database
     private <T> void insertData(T data) {
         try {
@@ -1184,12 +1571,12 @@ public class EmployeeInfoData {
      */
     private boolean checkMinValue(EmployeeInfo e) {
         if (e.getEmployeeId() == null || e.getEmployeeId().isEmpty()) {
-        	EmployeeInfoController.addError("Cannot insert/update Employee: " + e.getEmployeeId() + " due to ERROR EmployeeID");
+        	EmployeeInfoController.addError(e, "Cannot insert/update Employee: " + e.getEmployeeId() + " due to ERROR EmployeeID");
             return false;
         }
 
         if (e.getRelationCode() == null || e.getRelationCode().isEmpty()) {
-        	EmployeeInfoController.addError("Cannot insert/update Employee: " + e.getRelationCode() + " due to ERROR StaffNumber");
+        	EmployeeInfoController.addError(e, "Cannot insert/update Employee: " + e.getRelationCode() + " due to ERROR StaffNumber");
             return false;
         }
 
@@ -1207,7 +1594,7 @@ public class EmployeeInfoData {
             LocalDateTime locked = LocalDateTime.ofInstant(lock.getLockedDate().toInstant(), ZoneId.systemDefault());
             Duration diff = Duration.between(locked, today);
 
-            if (diff.getSeconds() >= lock.getMaxLock().longValue()) {
+            if (diff.getSeconds() >= lock.getMaxLock().longValue() || isLeftByRestart(lock)) {
                 lock.setLocked(new BigDecimal(1));
                 insertData(lock);
                 return true;
@@ -1220,6 +1607,27 @@ public class EmployeeInfoData {
         }
     }
 
+    /**
+     * A lock taken by this server before the JVM started was left by a run that a
+     * restart interrupted, so it can be taken over without waiting for MAX_LOCK.
+     */
+    private boolean isLeftByRestart(InterfaceLockMaster lock) {
+        if (lock.getCurrentServer() == null || lock.getLockedDate() == null) {
+            return false;
+        }
+        try {
+            String server = InetAddress.getLocalHost().getHostName();
+            long started = ManagementFactory.getRuntimeMXBean().getStartTime();
+            if (server.equals(lock.getCurrentServer()) && lock.getLockedDate().getTime() < started) {
+                logger.info("Taking over the lock left by " + server + " before its restart");
+                return true;
+            }
+        } catch (UnknownHostException e) {
+            logger.info(e.getMessage());
+        }
+        return false;
+    }
+
     public void lockTable(String notificationType) {
         em.getTransaction().begin();
         InterfaceLockMaster lock = em.createQuery("SELECT i FROM InterfaceLockMaster i WHERE i.interfaceType = :type", InterfaceLockMaster.class)
@@ -0,0 +1,38 @@
+package trax.aero.data;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory copy of the SYSTEM_TRAN_CODE entries the interface maintains, keyed by
+ * (SYSTEM_TRANSACTION, SYSTEM_CODE) and shared by all the workers of a run.
+ *
+ * The cache is preloaded at the start of the run and written through whenever a
+ * worker inserts a new code. lockFor() gives workers one monitor per code so only
+ * one of them checks and inserts a code that is not cached yet.
+ */
+public class TranscodeCache {
+
+	private final Set<String> codes = ConcurrentHashMap.newKeySet();
+	private final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+	private static String key(String transaction, String code) {
+		return transaction + '\u0001' + code;
+	}
+
+	public boolean contains(String transaction, String code) {
+		return codes.contains(key(transaction, code));
+	}
+
+	public void add(String transaction, String code) {
+		codes.add(key(transaction, code));
+	}
+
+	public Object lockFor(String transaction, String code) {
+		return locks.computeIfAbsent(key(transaction, code), k -> new Object());
+	}
+
+	public int size() {
+		return codes.size();
+	}
+}
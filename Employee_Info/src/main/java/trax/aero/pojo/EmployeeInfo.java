@@ -63,6 +63,15 @@ public class EmployeeInfo {
 	private String createdDate;
 	
 	private String modifiedDate;
+	
+	// Line of the row in the input file, 0 if unknown
+	private int rowNumber;
+	
+	// Last error raised while loading the employee
+	private String error;
+	
+	// Set when the employee was written but part of it was not (e.g. a transcode), so it is not fingerprinted
+	private boolean incomplete;
 
 	public String getEmployeeId() {
 		return employeeId;
@@ -287,4 +296,28 @@ public class EmployeeInfo {
 	public void setModifiedDate(String modifiedDate) {
 		this.modifiedDate = modifiedDate;
 	}
+
+	public int getRowNumber() {
+		return rowNumber;
+	}
+
+	public void setRowNumber(int rowNumber) {
+		this.rowNumber = rowNumber;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public void setError(String error) {
+		this.error = error;
+	}
+
+	public boolean isIncomplete() {
+		return incomplete;
+	}
+
+	public void setIncomplete(boolean incomplete) {
+		this.incomplete = incomplete;
+	}
 }
\ No newline at end of file
@@ -3,11 +3,15 @@ import javax.ejb.Singleton;
 import javax.ejb.Startup;
 
 import trax.aero.logger.LogManager;
+import trax.aero.utils.InputFolderWatcher;
 import trax.aero.utils.RunAble;
+import trax.aero.utils.SystemProperties;
 
+import java.io.File;
 import java.util.Timer;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
@@ -22,6 +26,9 @@ public class Start
 
 	private ScheduledExecutorService scheduledServ;
 	RunAble timer = null;
+	InputFolderWatcher watcher = null;
+	// A run triggered by the watcher is waiting for the scheduler thread
+	private final AtomicBoolean triggered = new AtomicBoolean();
 	Logger logger = LogManager.getLogger("EmployeeInfo_I01");
 	
 	@PostConstruct
@@ -34,16 +41,46 @@ public class Start
 			logger.info("Creating default Scheduled Executor Service [poolSize =" + String.valueOf(scheduledPoolSize) + "]");
 			this.scheduledServ = Executors.newScheduledThreadPool(scheduledPoolSize);
 		}
+		// With the watcher the interval is only a safety sweep, in case an event is lost
 		scheduledServ.scheduleAtFixedRate(timer, 30, Long.parseLong(System.getProperty("EmployeeInfo_interval")), TimeUnit.SECONDS);
-	
+		
+		if (SystemProperties.getBoolean("EmployeeInfo_watch", true)) {
+			try {
+				watcher = new InputFolderWatcher(new File(System.getProperty("EmployeeInfo_fileLoc")),
+						1000L * SystemProperties.getLong("EmployeeInfo_quietPeriod", 10L), new Runnable() {
+							public void run() {
+								// Runs are serialised on the scheduler thread, a burst of files queues a single one
+								if (triggered.compareAndSet(false, true)) {
+									scheduledServ.execute(new Runnable() {
+										public void run() {
+											triggered.set(false);
+											timer.run();
+										}
+									});
+								}
+							}
+						});
+			} catch (Exception e) {
+				logger.warning("Could not watch " + System.getProperty("EmployeeInfo_fileLoc") + ", files are picked up every "
+						+ System.getProperty("EmployeeInfo_interval") + " seconds: " + e.toString());
+			}
+		}
 	}
 	@PreDestroy
 	public void stop() 
 	{
+		if(watcher != null)
+		{
+			watcher.close();
+		}
 		if(!scheduledServ.isShutdown()) 
 		{
 			scheduledServ.shutdown();
 		}
+		if(timer != null)
+		{
+			timer.shutdown();
+		}
 	}
 	
 }
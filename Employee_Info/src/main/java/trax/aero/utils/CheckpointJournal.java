@@ -0,0 +1,191 @@
+package trax.aero.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import trax.aero.logger.LogManager;
+
+/**
+ * Progress journal of an input file, so that a run interrupted by a restart
+ * carries on where it stopped instead of loading the whole file again.
+ *
+ * The journal records the identity of the file (its length, last modified time
+ * and a checksum of its first block, so opening a large file costs one small
+ * read) and the number of leading rows whose chunks are done. Chunks finish out of order on the load threads, so only
+ * the contiguous prefix of done rows counts. The journal is rewritten at most
+ * every EmployeeInfo_checkpointInterval milliseconds, always by replacing the
+ * whole file, and deleted once the input file is archived. A journal whose
+ * identity does not match the file is ignored.
+ */
+public class CheckpointJournal {
+
+	static Logger logger = LogManager.getLogger("EmployeeInfo_I01");
+
+	// Bytes of the start of the file covered by the checksum
+	private static final int HEAD = 64 * 1024;
+
+	private final File journal;
+	private final String name;
+	private final long length;
+	private final long modified;
+	private final long checksum;
+	private final long interval;
+
+	private final int resumed;
+	private int committed;
+	private int written;
+	private long lastWrite;
+	// Finished chunks past the committed rows: first row -> row after the chunk
+	private final TreeMap<Integer, Integer> done = new TreeMap<Integer, Integer>();
+
+	private CheckpointJournal(File journal, File file, long length, long modified, long checksum, int resumed) {
+		this.journal = journal;
+		this.name = file.getName();
+		this.length = length;
+		this.modified = modified;
+		this.checksum = checksum;
+		this.interval = Math.max(0, SystemProperties.getLong("EmployeeInfo_checkpointInterval", 5000L));
+		this.resumed = resumed;
+		this.committed = resumed;
+		this.written = resumed;
+		this.lastWrite = System.currentTimeMillis();
+	}
+
+	/**
+	 * Opens the journal of an input file, reading the progress of an earlier run
+	 * over the same file if there is one.
+	 *
+	 * @param file The input file
+	 * @return The journal, or null if checkpoints are disabled or the file cannot be read
+	 */
+	public static CheckpointJournal open(File file) {
+		if (!SystemProperties.getBoolean("EmployeeInfo_checkpoint", true)) {
+			return null;
+		}
+		try {
+			File folder = new File(System.getProperty("EmployeeInfo_compFiles") + File.separator + "checkpoints");
+			if (!folder.isDirectory()) {
+				folder.mkdirs();
+			}
+			File journal = new File(folder, file.getName() + ".checkpoint");
+			long length = file.length();
+			long modified = file.lastModified();
+			long checksum = checksum(file);
+			int resumed = 0;
+
+			if (journal.isFile()) {
+				Properties p = new Properties();
+				try (InputStream in = new FileInputStream(journal)) {
+					p.load(in);
+				}
+				if (String.valueOf(length).equals(p.getProperty("length"))
+						&& String.valueOf(modified).equals(p.getProperty("modified"))
+						&& String.valueOf(checksum).equals(p.getProperty("checksum"))) {
+					resumed = Integer.parseInt(p.getProperty("rows", "0"));
+					logger.info("Resuming file " + file.getName() + " after " + resumed + " committed rows");
+				} else {
+					logger.warning("Checkpoint of " + file.getName() + " is for another version of the file, loading it from the start");
+				}
+			}
+			return new CheckpointJournal(journal, file, length, modified, checksum, resumed);
+		} catch (Exception e) {
+			logger.severe("Could not open the checkpoint of " + file.getName() + ", loading it from the start: " + e.toString());
+			return null;
+		}
+	}
+
+	// Checksum of the first block only, length and modified time stand for the rest
+	private static long checksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[HEAD];
+		try (InputStream in = new FileInputStream(file)) {
+			int total = 0;
+			int n;
+			while (total < HEAD && (n = in.read(buffer, total, HEAD - total)) > 0) {
+				total += n;
+			}
+			crc.update(buffer, 0, total);
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * @return The number of leading rows an earlier run has already committed
+	 */
+	public int getResumed() {
+		return resumed;
+	}
+
+	/**
+	 * Marks a chunk of rows as done, committed or reported as failed.
+	 *
+	 * @param first The ordinal of the first row of the chunk, 0 for the first row after the header
+	 * @param count The number of rows of the chunk
+	 */
+	public synchronized void done(int first, int count) {
+		done.put(first, first + count);
+		Integer next;
+		while ((next = done.remove(committed)) != null) {
+			committed = next;
+		}
+		if (committed > written && System.currentTimeMillis() - lastWrite >= interval) {
+			write();
+		}
+	}
+
+	/**
+	 * Writes the current progress, if it moved since the last write.
+	 */
+	public synchronized void flush() {
+		if (committed > written) {
+			write();
+		}
+	}
+
+	private void write() {
+		Properties p = new Properties();
+		p.setProperty("file", name);
+		p.setProperty("length", String.valueOf(length));
+		p.setProperty("modified", String.valueOf(modified));
+		p.setProperty("checksum", String.valueOf(checksum));
+		p.setProperty("rows", String.valueOf(committed));
+
+		File tmp = new File(journal.getPath() + ".tmp");
+		try {
+			try (OutputStream out = new FileOutputStream(tmp)) {
+				p.store(out, "I01 progress");
+			}
+			try {
+				Files.move(tmp.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			written = committed;
+		} catch (IOException e) {
+			logger.warning("Could not write the checkpoint of " + name + ": " + e.toString());
+		} finally {
+			lastWrite = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Removes the journal, once the file is archived.
+	 */
+	public synchronized void delete() {
+		done.clear();
+		if (journal.exists() && !journal.delete()) {
+			logger.warning("Could not delete the checkpoint " + journal);
+		}
+	}
+}
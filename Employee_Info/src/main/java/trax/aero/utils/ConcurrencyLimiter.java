@@ -0,0 +1,165 @@
+package trax.aero.utils;
+
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientException;
+import java.util.logging.Logger;
+
+import trax.aero.logger.LogManager;
+
+/**
+ * Adaptive limit on the number of chunks written to the database at once.
+ *
+ * EmployeeInfoData reports the latency of its statements and the errors that
+ * point at an overloaded database (timeouts, deadlocks, busy resources, pool
+ * exhaustion). Once per window of samples the limit is adjusted with an AIMD
+ * rule: it grows by one while latency stays within EmployeeInfo_latencyTolerance
+ * times the best latency seen and the limit was actually used, and it is cut by
+ * EmployeeInfo_concurrencyBackoff as soon as latency degrades or the database
+ * pushes back. The limit stays between EmployeeInfo_minConcurrency and
+ * EmployeeInfo_maxConcurrency.
+ */
+public class ConcurrencyLimiter {
+
+	static Logger logger = LogManager.getLogger("EmployeeInfo_I01");
+
+	// Deadlock, resource busy, library cache lock, no listener handler
+	private static final String[] OVERLOAD_CODES = { "ORA-00060", "ORA-00054", "ORA-04021", "ORA-12516", "ORA-12519", "ORA-12520" };
+
+	private final int min;
+	private final int max;
+	private final double tolerance;
+	private final double backoff;
+
+	private int limit;
+	private int inFlight;
+	private boolean saturated;
+
+	// Current window
+	private int samples;
+	private int errors;
+	private double latency;
+	// Best per-row latency seen, in nanoseconds, drifting up slowly so it follows the database
+	private double baseline = Double.MAX_VALUE;
+
+	/**
+	 * @param initial The limit to start from
+	 * @param min The lowest limit
+	 * @param max The highest limit
+	 */
+	public ConcurrencyLimiter(int initial, int min, int max) {
+		this.min = Math.max(1, min);
+		this.max = Math.max(this.min, max);
+		this.limit = Math.min(this.max, Math.max(this.min, initial));
+		this.tolerance = Math.max(1.0, SystemProperties.getDouble("EmployeeInfo_latencyTolerance", 2.0));
+		this.backoff = Math.min(0.95, Math.max(0.1, SystemProperties.getDouble("EmployeeInfo_concurrencyBackoff", 0.75)));
+		logger.info("Adaptive concurrency [initial =" + limit + ", min =" + this.min + ", max =" + this.max + "]");
+	}
+
+	/**
+	 * Waits until the limit lets one more chunk be written.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public synchronized void acquire() throws InterruptedException {
+		while (inFlight >= limit) {
+			saturated = true;
+			wait();
+		}
+		inFlight++;
+		if (inFlight >= limit) {
+			saturated = true;
+		}
+	}
+
+	public synchronized void release() {
+		inFlight--;
+		notifyAll();
+	}
+
+	/**
+	 * Records a statement that completed.
+	 *
+	 * @param nanos The time taken by the statement, execution and commit
+	 * @param rows The number of rows the statement wrote
+	 */
+	public void sample(long nanos, int rows) {
+		record((double) nanos / Math.max(1, rows), false);
+	}
+
+	/**
+	 * Records a statement that failed. Only errors caused by load count against the
+	 * limit; a row rejected for its data does not.
+	 *
+	 * @param e The error of the statement
+	 */
+	public void error(SQLException e) {
+		if (isOverload(e)) {
+			record(0, true);
+		}
+	}
+
+	public static boolean isOverload(SQLException e) {
+		if (e instanceof SQLTimeoutException || e instanceof SQLTransientException || e instanceof SQLRecoverableException) {
+			return true;
+		}
+		if (e.getSQLState() != null && e.getSQLState().startsWith("08")) {
+			return true;
+		}
+		String message = String.valueOf(e.getMessage());
+		for (String code : OVERLOAD_CODES) {
+			if (message.contains(code)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private synchronized void record(double nanosPerRow, boolean error) {
+		if (error) {
+			errors++;
+		} else {
+			latency += nanosPerRow;
+		}
+		samples++;
+
+		// One window is about one statement per chunk in flight
+		if (samples < Math.max(4, limit)) {
+			return;
+		}
+		int measured = samples - errors;
+		double average = measured > 0 ? latency / measured : 0;
+		int previous = limit;
+
+		if (errors > 0 || (measured > 0 && average > baseline * tolerance)) {
+			limit = Math.max(min, (int) (limit * backoff));
+		} else if (saturated && limit < max) {
+			limit++;
+		}
+		if (measured > 0) {
+			baseline = Math.min(baseline * 1.01, average);
+		}
+
+		if (limit != previous) {
+			logger.info("Concurrency " + previous + " -> " + limit + " [latency/row =" + (long) (average / 1000) + "us, baseline ="
+					+ (long) (baseline / 1000) + "us, errors =" + errors + "]");
+			notifyAll();
+		}
+		samples = 0;
+		errors = 0;
+		latency = 0;
+		saturated = inFlight >= limit;
+	}
+
+	/**
+	 * @return The number of chunks currently allowed in flight
+	 */
+	public synchronized int getLimit() {
+		return limit;
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+}
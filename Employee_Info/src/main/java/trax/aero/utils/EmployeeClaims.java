@@ -0,0 +1,76 @@
+package trax.aero.utils;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Orders the writes of one employee across the files of a run.
+ *
+ * Files are numbered oldest first. When an employee appears in several files,
+ * the newest file wins: an older file drops its row if a newer file has already
+ * claimed the employee, and a newer file waits for the chunk of the older file
+ * that is still writing it. Employees that appear in a single file are never
+ * held back.
+ */
+public class EmployeeClaims {
+
+	/** Returned when there is nothing to wait for. */
+	public static final CompletableFuture<Void> NONE = CompletableFuture.completedFuture(null);
+
+	private static final class Claim {
+		final int fileIndex;
+		final CompletableFuture<Void> write;
+
+		Claim(int fileIndex, CompletableFuture<Void> write) {
+			this.fileIndex = fileIndex;
+			this.write = write;
+		}
+	}
+
+	private final Map<String, Claim> claims = new ConcurrentHashMap<String, Claim>();
+
+	/**
+	 * Claims an employee for the chunk of a file.
+	 *
+	 * @param relationCode The employee
+	 * @param fileIndex The position of the file in the run
+	 * @param write Completed once the chunk holding the employee has been written
+	 * @return null if a newer file owns the employee and the row must be skipped, otherwise
+	 *         the write the chunk has to wait for (NONE if there is none)
+	 */
+	public CompletableFuture<Void> claim(String relationCode, final int fileIndex, final CompletableFuture<Void> write) {
+		if (relationCode == null || relationCode.isEmpty()) {
+			return NONE;
+		}
+
+		final Claim[] previous = new Claim[1];
+		final boolean[] superseded = new boolean[1];
+		claims.compute(relationCode, (code, claim) -> {
+			if (claim != null && claim.fileIndex > fileIndex) {
+				superseded[0] = true;
+				return claim;
+			}
+			previous[0] = claim;
+			return new Claim(fileIndex, write);
+		});
+
+		if (superseded[0]) {
+			return null;
+		}
+		// Rows of the same file keep running in parallel, as they always have
+		if (previous[0] == null || previous[0].fileIndex == fileIndex) {
+			return NONE;
+		}
+		return previous[0].write;
+	}
+
+	/**
+	 * @param relationCode An employee claimed by a file of the run
+	 * @return Completed once the chunk of the file owning the employee has been written
+	 */
+	public CompletableFuture<Void> owner(String relationCode) {
+		Claim claim = claims.get(relationCode);
+		return claim == null ? NONE : claim.write;
+	}
+}
@@ -0,0 +1,198 @@
+package trax.aero.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import trax.aero.logger.LogManager;
+import trax.aero.pojo.EmployeeInfo;
+
+/**
+ * Maps the cells of an HR file row to an EmployeeInfo by column name.
+ *
+ * The header row is read once and compiled into a table of setters indexed by
+ * cell position, so mapping a row is a single pass over its cells. Columns may
+ * come in any order, unknown columns are ignored and a missing EMPLOYEE_ID or
+ * RELATION_CODE column fails the file before any row is loaded.
+ */
+public class EmployeeColumnBinder {
+
+	static Logger logger = LogManager.getLogger("EmployeeInfo_I01");
+
+	private static final class Column {
+		final String name;
+		final BiConsumer<EmployeeInfo, String> setter;
+		final Function<EmployeeInfo, String> getter;
+		// Values repeated across many rows, shared through the run's StringPool
+		final boolean pooled;
+
+		Column(String name, BiConsumer<EmployeeInfo, String> setter, Function<EmployeeInfo, String> getter) {
+			this(name, setter, getter, false);
+		}
+
+		Column(String name, BiConsumer<EmployeeInfo, String> setter, Function<EmployeeInfo, String> getter, boolean pooled) {
+			this.name = name;
+			this.setter = setter;
+			this.getter = getter;
+			this.pooled = pooled;
+		}
+	}
+
+	// The columns in the order of the standard layout, also used for the failure file
+	private static final Column[] COLUMNS = {
+		new Column("EMPLOYEE_ID", EmployeeInfo::setEmployeeId, EmployeeInfo::getEmployeeId),
+		new Column("RELATION_CODE", EmployeeInfo::setRelationCode, EmployeeInfo::getRelationCode),
+		new Column("FULL_NAME", EmployeeInfo::setFullName, EmployeeInfo::getFullName),
+		new Column("FIRST_NAME", EmployeeInfo::setFirstName, EmployeeInfo::getFirstName),
+		new Column("LAST_NAME", EmployeeInfo::setLastName, EmployeeInfo::getLastName),
+		new Column("RELATED_LOCATION", EmployeeInfo::setRelatedLocation, EmployeeInfo::getRelatedLocation, true),
+		new Column("POSITION_CODE", EmployeeInfo::setPositionCode, EmployeeInfo::getPositionCode, true),
+		new Column("POSITION", EmployeeInfo::setPosition, EmployeeInfo::getPosition, true),
+		new Column("DATE_OF_BIRTH", EmployeeInfo::setDateOfBirth, EmployeeInfo::getDateOfBirth),
+		new Column("DEPARTMENT", EmployeeInfo::setDepartment, EmployeeInfo::getDepartment, true),
+		new Column("DEPARTMENT_DESCRIPTION", EmployeeInfo::setDepartmentDescription, EmployeeInfo::getDepartmentDescription, true),
+		new Column("DIVISION", EmployeeInfo::setDivision, EmployeeInfo::getDivision, true),
+		new Column("DIVISION_DESCRIPTION", EmployeeInfo::setDivisionDescription, EmployeeInfo::getDivisionDescription, true),
+		new Column("MAIL_PHONE", EmployeeInfo::setMailPhone, EmployeeInfo::getMailPhone),
+		new Column("MAIL_EMAIL", EmployeeInfo::setMailEmail, EmployeeInfo::getMailEmail),
+		new Column("DATE_HIRED", EmployeeInfo::setDateHired, EmployeeInfo::getDateHired),
+		new Column("DATE_TERMINATED", EmployeeInfo::setDateTerminated, EmployeeInfo::getDateTerminated),
+		new Column("PROFILE", EmployeeInfo::setProfile, EmployeeInfo::getProfile, true),
+		new Column("COMPANY_NAME", EmployeeInfo::setCompanyName, EmployeeInfo::getCompanyName, true),
+		new Column("COST_CODE", EmployeeInfo::setCostCode, EmployeeInfo::getCostCode, true),
+		new Column("SKILL", EmployeeInfo::setSkill, EmployeeInfo::getSkill, true),
+		// Spelt as in the files HR has always sent
+		new Column("SKILL_DESCIPTION", EmployeeInfo::setSkillDescription, EmployeeInfo::getSkillDescription, true),
+		new Column("GRADE_CODE", EmployeeInfo::setGradeCode, EmployeeInfo::getGradeCode, true),
+		new Column("STATUS", EmployeeInfo::setStatus, EmployeeInfo::getStatus, true),
+	};
+
+	private static final String[] REQUIRED = { "EMPLOYEE_ID", "RELATION_CODE" };
+
+	private static final Map<String, Column> BY_NAME = new HashMap<String, Column>();
+
+	static {
+		for (Column column : COLUMNS) {
+			BY_NAME.put(column.name, column);
+		}
+		BY_NAME.put("SKILL_DESCRIPTION", BY_NAME.get("SKILL_DESCIPTION"));
+	}
+
+	private final Column[] setters;
+	private final StringPool pool;
+
+	private EmployeeColumnBinder(Column[] setters, StringPool pool) {
+		this.setters = setters;
+		this.pool = pool;
+	}
+
+	/**
+	 * Compiles the binder of a file from its header row.
+	 *
+	 * @param header The cells of the header row
+	 * @param pool The pool of the run for the low-cardinality columns, or null
+	 * @return The binder for the rows of the file
+	 * @throws Exception if a required column is missing
+	 */
+	public static EmployeeColumnBinder forHeader(String[] header, StringPool pool) throws Exception {
+		Column[] setters = new Column[header.length];
+		Map<String, Integer> found = new LinkedHashMap<String, Integer>();
+		List<String> ignored = new ArrayList<String>();
+
+		for (int i = 0; i < header.length; i++) {
+			String name = normalise(header[i]);
+			Column column = BY_NAME.get(name);
+			if (column == null) {
+				ignored.add(header[i]);
+				continue;
+			}
+			if (found.containsKey(column.name)) {
+				throw new Exception("Column " + column.name + " appears more than once in the header");
+			}
+			found.put(column.name, i);
+			setters[i] = column;
+		}
+
+		// Files without a recognisable header are read in the standard layout, as they always were
+		if (found.isEmpty()) {
+			logger.warning("No known column in the header, reading the file in the standard column order");
+			return new EmployeeColumnBinder(COLUMNS, pool);
+		}
+
+		for (String required : REQUIRED) {
+			if (!found.containsKey(required)) {
+				throw new Exception("Missing required column " + required + " in the header");
+			}
+		}
+		if (!ignored.isEmpty()) {
+			logger.warning("Ignoring unknown columns " + ignored);
+		}
+		if (found.size() < COLUMNS.length) {
+			List<String> missing = new ArrayList<String>();
+			for (Column column : COLUMNS) {
+				if (!found.containsKey(column.name)) {
+					missing.add(column.name);
+				}
+			}
+			logger.warning("Columns " + missing + " are not in the file and will be left empty");
+		}
+		return new EmployeeColumnBinder(setters, pool);
+	}
+
+	private static String normalise(String name) {
+		if (name == null) {
+			return "";
+		}
+		// The first header cell may carry the UTF-8 byte order mark
+		return name.replace("\uFEFF", "").trim().toUpperCase().replace(' ', '_');
+	}
+
+	/**
+	 * Maps one row.
+	 *
+	 * @param row The cells of the row
+	 * @return The employee
+	 */
+	public EmployeeInfo bind(String[] row) {
+		EmployeeInfo employee = new EmployeeInfo();
+		int cells = Math.min(row.length, setters.length);
+		for (int i = 0; i < cells; i++) {
+			Column column = setters[i];
+			if (column != null) {
+				column.setter.accept(employee, column.pooled && pool != null ? pool.intern(row[i]) : row[i]);
+			}
+		}
+		return employee;
+	}
+
+	/**
+	 * @return The column names of the standard layout
+	 */
+	public static String[] header() {
+		String[] header = new String[COLUMNS.length];
+		for (int i = 0; i < COLUMNS.length; i++) {
+			header[i] = COLUMNS[i].name;
+		}
+		return header;
+	}
+
+	/**
+	 * Lays an employee out in the standard column order, empty for missing values.
+	 *
+	 * @param e The employee
+	 * @return One cell per column of header()
+	 */
+	public static String[] values(EmployeeInfo e) {
+		String[] values = new String[COLUMNS.length];
+		for (int i = 0; i < COLUMNS.length; i++) {
+			String value = COLUMNS[i].getter.apply(e);
+			values[i] = value != null ? value : "";
+		}
+		return values;
+	}
+}
@@ -0,0 +1,301 @@
+package trax.aero.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Logger;
+
+import trax.aero.logger.LogManager;
+import trax.aero.pojo.EmployeeInfo;
+
+/**
+ * Persistent index of relation code to a 64-bit hash of the employee's fields as
+ * last loaded into relation_master.
+ *
+ * The index is an open-addressing hash table kept in a memory-mapped file, so it
+ * lives off-heap and survives restarts. A relation code is identified by two
+ * independent 64-bit hashes, so two codes only share an entry if both collide.
+ * Entries are only written once the employee has been committed in full; a
+ * missing or unreadable index simply means every row is loaded again.
+ */
+public class EmployeeFingerprintStore {
+
+	static Logger logger = LogManager.getLogger("EmployeeInfo_I01");
+
+	private static final int MAGIC = 0x45494632; // "EIF2"
+	private static final int HEADER = 16;
+	// Key, check and fingerprint
+	private static final int SLOT = 24;
+	private static final int INITIAL_CAPACITY = 1 << 16;
+
+	// FNV-1a 64-bit
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private MappedByteBuffer table;
+	private int capacity;
+	private int size;
+
+	EmployeeFingerprintStore(File path) throws IOException {
+		file = new RandomAccessFile(path, "rw");
+		channel = file.getChannel();
+
+		// The header is checked before anything is mapped, a mapped file cannot be truncated on Windows
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		if (file.length() >= HEADER && channel.read(header, 0) == HEADER
+				&& isValid(header.getInt(0), header.getInt(4), header.getInt(8), file.length())) {
+			capacity = header.getInt(4);
+			table = channel.map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+			// A process stopped between writing a slot and the header leaves the stored size behind
+			size = countSlots();
+			if (size != header.getInt(8)) {
+				logger.warning("Fingerprint index " + path + " holds " + size + " employees, not " + header.getInt(8));
+				table.putInt(8, size);
+			}
+		} else {
+			if (file.length() > 0) {
+				logger.warning("Fingerprint index " + path + " is not valid, starting a new one");
+			}
+			file.setLength(0);
+			file.setLength(HEADER + (long) INITIAL_CAPACITY * SLOT);
+			map(INITIAL_CAPACITY);
+			size = 0;
+			table.putInt(8, 0);
+		}
+		logger.info("Opened fingerprint index " + path + " with " + size + " employees");
+	}
+
+	private static boolean isValid(int magic, int capacity, int size, long length) {
+		return magic == MAGIC && capacity > 0 && Integer.bitCount(capacity) == 1
+				&& length == HEADER + (long) capacity * SLOT && size >= 0 && size <= capacity;
+	}
+
+	/**
+	 * Opens the fingerprint index kept next to the archived files.
+	 *
+	 * @return The store, or null if skipping unchanged employees is disabled or the index cannot be opened
+	 */
+	public static EmployeeFingerprintStore open() {
+		if (!SystemProperties.getBoolean("EmployeeInfo_skipUnchanged", true)) {
+			return null;
+		}
+		try {
+			File folder = new File(System.getProperty("EmployeeInfo_compFiles"));
+			if (!folder.isDirectory()) {
+				folder.mkdirs();
+			}
+			return new EmployeeFingerprintStore(new File(folder, "employee_fingerprints.idx"));
+		} catch (Exception e) {
+			logger.severe("Could not open the fingerprint index, every employee will be loaded: " + e.toString());
+			return null;
+		}
+	}
+
+	// Maps the whole file, which must already be the size of the given capacity
+	private void map(int newCapacity) throws IOException {
+		table = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) newCapacity * SLOT);
+		table.putInt(0, MAGIC);
+		table.putInt(4, newCapacity);
+		capacity = newCapacity;
+	}
+
+	private static long hash(long h, String value) {
+		if (value != null) {
+			byte[] bytes = value.trim().getBytes(StandardCharsets.UTF_8);
+			for (byte b : bytes) {
+				h ^= (b & 0xff);
+				h *= FNV_PRIME;
+			}
+		}
+		// Field separator, so that moving text between fields changes the hash
+		h ^= 0x1f;
+		h *= FNV_PRIME;
+		return h;
+	}
+
+	static long keyOf(String relationCode) {
+		long key = hash(FNV_OFFSET, relationCode);
+		return key == 0 ? 1 : key;
+	}
+
+	// Second identity of a relation code, unrelated to keyOf: a polynomial hash of the characters, mixed
+	static long checkOf(String relationCode) {
+		String code = relationCode.trim();
+		long h = code.length();
+		for (int i = 0; i < code.length(); i++) {
+			h = 31 * h + code.charAt(i);
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Hashes the normalised (trimmed, null as empty) fields of an employee.
+	 *
+	 * @param e The employee
+	 * @return The 64-bit fingerprint of the row
+	 */
+	public static long fingerprint(EmployeeInfo e) {
+		long h = FNV_OFFSET;
+		h = hash(h, e.getEmployeeId());
+		h = hash(h, e.getRelationCode());
+		h = hash(h, e.getFullName());
+		h = hash(h, e.getFirstName());
+		h = hash(h, e.getLastName());
+		h = hash(h, e.getRelatedLocation());
+		h = hash(h, e.getPositionCode());
+		h = hash(h, e.getPosition());
+		h = hash(h, e.getDateOfBirth());
+		h = hash(h, e.getDepartment());
+		h = hash(h, e.getDepartmentDescription());
+		h = hash(h, e.getDivision());
+		h = hash(h, e.getDivisionDescription());
+		h = hash(h, e.getMailPhone());
+		h = hash(h, e.getMailEmail());
+		h = hash(h, e.getDateHired());
+		h = hash(h, e.getDateTerminated());
+		h = hash(h, e.getProfile());
+		h = hash(h, e.getCompanyName());
+		h = hash(h, e.getCostCode());
+		h = hash(h, e.getSkill());
+		h = hash(h, e.getSkillDescription());
+		h = hash(h, e.getGradeCode());
+		h = hash(h, e.getStatus());
+		return h;
+	}
+
+	private int countSlots() {
+		int live = 0;
+		for (int slot = 0; slot < capacity; slot++) {
+			if (table.getLong((int) offset(slot)) != 0) {
+				live++;
+			}
+		}
+		return live;
+	}
+
+	private static long offset(int slot) {
+		return HEADER + (long) slot * SLOT;
+	}
+
+	// The slot holding the code, or the empty slot where it goes
+	private int slotOf(long key, long check) {
+		int mask = capacity - 1;
+		int slot = (int) (key ^ (key >>> 32)) & mask;
+		while (true) {
+			long stored = table.getLong((int) offset(slot));
+			if (stored == 0 || (stored == key && table.getLong((int) offset(slot) + 8) == check)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Checks whether an employee was already loaded with exactly these values.
+	 *
+	 * @param e The employee read from the file
+	 * @return true if the employee can be skipped
+	 */
+	public synchronized boolean isUnchanged(EmployeeInfo e) {
+		if (e.getRelationCode() == null || e.getRelationCode().isEmpty()) {
+			return false;
+		}
+		int slot = slotOf(keyOf(e.getRelationCode()), checkOf(e.getRelationCode()));
+		long stored = table.getLong((int) offset(slot));
+		return stored != 0 && table.getLong((int) offset(slot) + 16) == fingerprint(e);
+	}
+
+	/**
+	 * Records the fingerprint of an employee that has been committed. Employees
+	 * marked incomplete are left out, so they are loaded again next time.
+	 *
+	 * @param e The committed employee
+	 */
+	public synchronized void put(EmployeeInfo e) {
+		if (e.getRelationCode() == null || e.getRelationCode().isEmpty() || e.isIncomplete()) {
+			return;
+		}
+		try {
+			if ((size + 1) * 10L > capacity * 6L) {
+				grow();
+			}
+			long key = keyOf(e.getRelationCode());
+			long check = checkOf(e.getRelationCode());
+			int slot = slotOf(key, check);
+			int at = (int) offset(slot);
+			if (table.getLong(at) == 0) {
+				table.putLong(at + 8, check);
+				table.putLong(at, key);
+				size++;
+				table.putInt(8, size);
+			}
+			table.putLong(at + 16, fingerprint(e));
+		} catch (IOException ex) {
+			logger.warning("Could not record fingerprint of employee " + e.getRelationCode() + ": " + ex.toString());
+		}
+	}
+
+	/**
+	 * Doubles the table in place. The file is only ever extended while it is
+	 * mapped, never truncated, which Windows does not allow.
+	 */
+	private void grow() throws IOException {
+		int oldCapacity = capacity;
+		// Sized from the slots themselves, and the old slots only cleared once every entry is copied
+		long[] entries = new long[countSlots() * 3];
+		int n = 0;
+		for (int slot = 0; slot < oldCapacity; slot++) {
+			int at = (int) offset(slot);
+			long key = table.getLong(at);
+			if (key != 0) {
+				entries[n++] = key;
+				entries[n++] = table.getLong(at + 8);
+				entries[n++] = table.getLong(at + 16);
+			}
+		}
+		for (int slot = 0; slot < oldCapacity; slot++) {
+			table.putLong((int) offset(slot), 0);
+		}
+
+		int newCapacity = oldCapacity * 2;
+		file.setLength(HEADER + (long) newCapacity * SLOT);
+		map(newCapacity);
+		for (int i = 0; i < n; i += 3) {
+			int at = (int) offset(slotOf(entries[i], entries[i + 1]));
+			table.putLong(at, entries[i]);
+			table.putLong(at + 8, entries[i + 1]);
+			table.putLong(at + 16, entries[i + 2]);
+		}
+		size = n / 3;
+		table.putInt(8, size);
+		logger.info("Fingerprint index grown to " + capacity + " slots");
+	}
+
+	/**
+	 * Writes the index to disk.
+	 */
+	public synchronized void flush() {
+		table.force();
+	}
+
+	public synchronized void close() {
+		try {
+			table.force();
+			channel.close();
+			file.close();
+		} catch (IOException e) {
+			logger.warning("Error closing fingerprint index: " + e.toString());
+		}
+	}
+}
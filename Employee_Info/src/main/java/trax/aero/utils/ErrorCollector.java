@@ -0,0 +1,163 @@
+package trax.aero.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded, thread-safe collector of the errors raised while loading.
+ *
+ * Errors are grouped in classes (the text before the first ':' of the message,
+ * plus the ORA- code if there is one). Every class keeps a count and the first
+ * EmployeeInfo_errorSamples messages with their row numbers, so a file with
+ * thousands of bad rows still produces a short report. Adding an error takes no
+ * lock once its class exists.
+ */
+public class ErrorCollector {
+
+	private static final Pattern ORA_CODE = Pattern.compile("ORA-\\d{5}");
+	private static final int MAX_CLASS_LENGTH = 100;
+	private static final String OTHER = "Other errors";
+
+	private final int maxSamples;
+	private final int maxClasses;
+	private final Map<String, ErrorClass> classes = new ConcurrentHashMap<String, ErrorClass>();
+	private final LongAdder total = new LongAdder();
+
+	private static final class ErrorClass {
+		final String name;
+		final LongAdder count = new LongAdder();
+		final AtomicInteger sampled = new AtomicInteger();
+		final AtomicReferenceArray<String> samples;
+
+		ErrorClass(String name, int maxSamples) {
+			this.name = name;
+			this.samples = new AtomicReferenceArray<String>(maxSamples);
+		}
+	}
+
+	public ErrorCollector() {
+		this(Math.max(0, SystemProperties.getInt("EmployeeInfo_errorSamples", 10)),
+				Math.max(1, SystemProperties.getInt("EmployeeInfo_errorClasses", 50)));
+	}
+
+	public ErrorCollector(int maxSamples, int maxClasses) {
+		this.maxSamples = maxSamples;
+		this.maxClasses = maxClasses;
+	}
+
+	/**
+	 * Records an error.
+	 *
+	 * @param row The line of the input file the error is about, 0 if none
+	 * @param message The error message
+	 */
+	public void add(int row, String message) {
+		if (message == null) {
+			message = "null";
+		}
+		total.increment();
+
+		String name = classify(message);
+		ErrorClass errorClass = classes.get(name);
+		if (errorClass == null) {
+			// Once the class limit is reached, new kinds of error are only counted together
+			if (classes.size() >= maxClasses) {
+				name = OTHER;
+			}
+			errorClass = classes.computeIfAbsent(name, n -> new ErrorClass(n, maxSamples));
+		}
+		errorClass.count.increment();
+
+		if (errorClass.sampled.get() < maxSamples) {
+			int slot = errorClass.sampled.getAndIncrement();
+			if (slot < maxSamples) {
+				errorClass.samples.set(slot, row > 0 ? "Row " + row + ": " + message : message);
+			}
+		}
+	}
+
+	public void add(String message) {
+		add(0, message);
+	}
+
+	static String classify(String message) {
+		int colon = message.indexOf(':');
+		String name = (colon > 0 ? message.substring(0, colon) : message).trim();
+		if (name.length() > MAX_CLASS_LENGTH) {
+			name = name.substring(0, MAX_CLASS_LENGTH);
+		}
+		Matcher ora = ORA_CODE.matcher(message);
+		if (ora.find()) {
+			name = name + " (" + ora.group() + ")";
+		}
+		return name;
+	}
+
+	public boolean isEmpty() {
+		return total.sum() == 0;
+	}
+
+	public long getTotal() {
+		return total.sum();
+	}
+
+	/**
+	 * @return The number of errors recorded per class
+	 */
+	public Map<String, Long> getCounts() {
+		Map<String, Long> counts = new ConcurrentHashMap<String, Long>();
+		for (ErrorClass errorClass : classes.values()) {
+			counts.put(errorClass.name, errorClass.count.sum());
+		}
+		return counts;
+	}
+
+	/**
+	 * Formats the collected errors for a report, the most frequent classes first.
+	 *
+	 * @return One block per class with its count and samples
+	 */
+	public String summary() {
+		List<ErrorClass> sorted = new ArrayList<ErrorClass>(classes.values());
+		Collections.sort(sorted, new Comparator<ErrorClass>() {
+			public int compare(ErrorClass a, ErrorClass b) {
+				return Long.compare(b.count.sum(), a.count.sum());
+			}
+		});
+
+		String newLine = System.lineSeparator();
+		StringBuilder sb = new StringBuilder();
+		for (ErrorClass errorClass : sorted) {
+			long count = errorClass.count.sum();
+			sb.append(errorClass.name).append(" (").append(count).append(count == 1 ? " occurrence)" : " occurrences)").append(newLine);
+
+			int shown = 0;
+			for (int i = 0; i < maxSamples; i++) {
+				String sample = errorClass.samples.get(i);
+				if (sample != null) {
+					sb.append("    ").append(sample).append(newLine);
+					shown++;
+				}
+			}
+			if (count > shown) {
+				sb.append("    ... and ").append(count - shown).append(" more").append(newLine);
+			}
+			sb.append(newLine);
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return summary();
+	}
+}
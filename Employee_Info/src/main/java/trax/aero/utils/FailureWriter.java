@@ -0,0 +1,246 @@
+package trax.aero.utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import com.opencsv.CSVWriter;
+
+import trax.aero.logger.LogManager;
+import trax.aero.pojo.EmployeeInfo;
+
+/**
+ * Writes the failed employees of a file to its failure report while the file is
+ * being loaded.
+ *
+ * Workers hand failed rows over through a bounded queue and a single writer
+ * thread appends them to FAILURE_&lt;time&gt;_&lt;file&gt;.part in the dated
+ * folder of EmployeeInfo_compFiles, flushing after every batch it drains. close()
+ * renames the report once the file is done, so a crash leaves a partial .part
+ * report behind instead of nothing. The thread and the report are only created
+ * on the first failure.
+ *
+ * The report keeps the columns of the input file, so it can be corrected and
+ * dropped again as it is. The row number and the error of each failed employee
+ * go to a companion &lt;report&gt;.errors file.
+ */
+public class FailureWriter {
+
+	static Logger logger = LogManager.getLogger("EmployeeInfo_I01");
+
+	// Tells the writer thread that no more rows will come
+	private static final EmployeeInfo END = new EmployeeInfo();
+
+	private final String fileName;
+	private final BlockingQueue<EmployeeInfo> queue;
+	private final AtomicInteger count = new AtomicInteger();
+	private Thread writer;
+	private File part;
+	private File errorsPart;
+	private volatile IOException error;
+	private String report;
+
+	/**
+	 * @param fileName The name of the input file, as it should appear in the report name
+	 */
+	public FailureWriter(String fileName) {
+		this.fileName = fileName;
+		this.queue = new LinkedBlockingQueue<EmployeeInfo>(Math.max(1, SystemProperties.getInt("EmployeeInfo_failureQueue", 1000)));
+	}
+
+	/**
+	 * Queues failed employees for the report, waiting if the writer is behind. Once
+	 * the report has failed the employees are only counted, close() reports the error.
+	 *
+	 * @param failures The employees that could not be loaded
+	 */
+	public void addAll(Collection<EmployeeInfo> failures) {
+		if (failures.isEmpty()) {
+			return;
+		}
+		start();
+		for (EmployeeInfo e : failures) {
+			if (error != null) {
+				count.incrementAndGet();
+				continue;
+			}
+			try {
+				queue.put(e);
+				count.incrementAndGet();
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				logger.severe("Interrupted while reporting failed employee " + e.getRelationCode());
+				return;
+			}
+		}
+	}
+
+	public void add(EmployeeInfo failure) {
+		addAll(Arrays.asList(failure));
+	}
+
+	public boolean isEmpty() {
+		return count.get() == 0;
+	}
+
+	public int size() {
+		return count.get();
+	}
+
+	private synchronized void start() {
+		if (writer != null) {
+			return;
+		}
+		DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyyMMdd");
+		File todayFolder = new File(System.getProperty("EmployeeInfo_compFiles") + File.separator + dtf.format(LocalDateTime.now()));
+		if (!todayFolder.isDirectory()) {
+			todayFolder.mkdirs();
+		}
+		String name = "FAILURE_" + "_" + Calendar.getInstance().getTimeInMillis() + "_" + fileName;
+		part = new File(todayFolder, name + ".part");
+		errorsPart = new File(todayFolder, name + ".errors.part");
+
+		writer = new Thread(new Runnable() {
+			public void run() {
+				write();
+			}
+		}, "EmployeeInfo-failures-" + fileName);
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	private static CSVWriter open(File file) throws IOException {
+		return new CSVWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)), '|',
+				CSVWriter.NO_QUOTE_CHARACTER,
+				CSVWriter.DEFAULT_ESCAPE_CHARACTER,
+				CSVWriter.DEFAULT_LINE_END);
+	}
+
+	private void write() {
+		CSVWriter csv = null;
+		CSVWriter errors = null;
+		List<EmployeeInfo> batch = new ArrayList<EmployeeInfo>();
+		try {
+			csv = open(part);
+			errors = open(errorsPart);
+			csv.writeNext(EmployeeColumnBinder.header());
+			errors.writeNext(new String[] { "ROW_NUMBER", "RELATION_CODE", "ERROR" });
+
+			while (true) {
+				batch.add(queue.take());
+				queue.drainTo(batch);
+
+				boolean end = false;
+				for (EmployeeInfo e : batch) {
+					if (e == END) {
+						end = true;
+						continue;
+					}
+					csv.writeNext(EmployeeColumnBinder.values(e));
+					errors.writeNext(new String[] {
+							e.getRowNumber() > 0 ? String.valueOf(e.getRowNumber()) : "",
+							e.getRelationCode() != null ? e.getRelationCode() : "",
+							// The file is '|' separated, one line per employee
+							e.getError() != null ? e.getError().replace('|', '/').replace('\r', ' ').replace('\n', ' ') : "" });
+				}
+				batch.clear();
+				csv.flush();
+				errors.flush();
+
+				if (end) {
+					break;
+				}
+			}
+		} catch (IOException e) {
+			error = e;
+			logger.severe("Error writing failure report " + part + ": " + e.toString());
+			close(csv, part);
+			close(errors, errorsPart);
+			csv = null;
+			errors = null;
+			discard(batch);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			close(csv, part);
+			close(errors, errorsPart);
+		}
+	}
+
+	// Keeps taking rows until close() ends the report, so producers never block on a failed writer
+	private void discard(List<EmployeeInfo> batch) {
+		try {
+			while (!batch.contains(END)) {
+				batch.clear();
+				batch.add(queue.take());
+				queue.drainTo(batch);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		queue.clear();
+	}
+
+	private static void close(CSVWriter csv, File file) {
+		if (csv != null) {
+			try {
+				csv.close();
+			} catch (IOException e) {
+				logger.warning("Error closing failure report " + file + ": " + e.toString());
+			}
+		}
+	}
+
+	/**
+	 * Finishes the report and its errors file and gives them their final names.
+	 * Calling it again returns the same name.
+	 *
+	 * @return The name of the report, or null if no employee failed
+	 * @throws IOException if the report could not be written
+	 */
+	public synchronized String close() throws IOException {
+		if (writer == null || report != null) {
+			return report;
+		}
+		try {
+			// A writer that stopped on an error is not waiting for the end any more
+			if (writer.isAlive()) {
+				queue.put(END);
+			}
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while finishing failure report " + part);
+		}
+		if (error != null) {
+			throw error;
+		}
+
+		String name = part.getName().substring(0, part.getName().length() - ".part".length());
+		File output = new File(part.getParentFile(), name);
+		if (!part.renameTo(output)) {
+			throw new IOException("Could not rename failure report " + part + " to " + name);
+		}
+		File errors = new File(part.getParentFile(), name + ".errors");
+		if (!errorsPart.renameTo(errors)) {
+			logger.warning("Could not rename the errors of failure report " + errorsPart + " to " + errors.getName());
+		}
+		report = output.getName();
+		logger.info("DONE processing file " + report + " with " + count.get() + " failed employees");
+		return report;
+	}
+}
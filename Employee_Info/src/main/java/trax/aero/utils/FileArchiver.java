@@ -0,0 +1,171 @@
+package trax.aero.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Calendar;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+
+import trax.aero.logger.LogManager;
+
+/**
+ * Moves processed HR files to the dated folders of EmployeeInfo_compFiles.
+ *
+ * A file is moved with a single rename when the archive is on the same file
+ * system, and copied then deleted otherwise. Archived CSV files are then
+ * gzipped by a background thread, so the next file does not wait for it, and
+ * dated folders older than EmployeeInfo_archiveRetentionDays are removed.
+ * Encrypted .pgp files are kept as they are, they do not compress.
+ */
+public class FileArchiver {
+
+	static Logger logger = LogManager.getLogger("EmployeeInfo_I01");
+
+	private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+	private final File archive;
+	private final boolean compress;
+	private final int retentionDays;
+	private final ExecutorService compressor;
+
+	// The dated folder of the current day, created once per day
+	private LocalDate day;
+	private File todayFolder;
+	private LocalDate purged;
+
+	public FileArchiver() {
+		this.archive = new File(System.getProperty("EmployeeInfo_compFiles"));
+		this.compress = "gzip".equalsIgnoreCase(SystemProperties.getString("EmployeeInfo_archiveCompression", "gzip"));
+		this.retentionDays = SystemProperties.getInt("EmployeeInfo_archiveRetentionDays", 0);
+		this.compressor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "EmployeeInfo-archiver");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
+
+	private synchronized File todayFolder() {
+		LocalDate today = LocalDate.now();
+		if (!today.equals(day)) {
+			todayFolder = new File(archive, DAY.format(today));
+			if (!todayFolder.isDirectory()) {
+				todayFolder.mkdirs();
+			}
+			day = today;
+		}
+		return todayFolder;
+	}
+
+	/**
+	 * Archives a processed file under its outcome.
+	 *
+	 * @param file The input file
+	 * @param outcome PROCESSED_ or FAILURE_
+	 * @return The name of the archived file, or null if the file could not be archived and was left in place
+	 */
+	public String archive(File file, String outcome) {
+		File output = new File(todayFolder(), outcome + Calendar.getInstance().getTimeInMillis() + "_" + file.getName());
+		try {
+			try {
+				Files.move(file.toPath(), output.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				// The archive is on another file system
+				FileUtils.copyFile(file, output);
+				Files.delete(file.toPath());
+			}
+		} catch (IOException e) {
+			logger.severe("Could not archive " + file.getName() + " to " + output + ", leaving it in place: " + e.toString());
+			return null;
+		}
+
+		if (compress && !output.getName().toLowerCase().endsWith(".pgp")) {
+			final File archived = output;
+			compressor.execute(new Runnable() {
+				public void run() {
+					gzip(archived);
+				}
+			});
+		}
+		if (retentionDays > 0) {
+			compressor.execute(new Runnable() {
+				public void run() {
+					purge();
+				}
+			});
+		}
+		return output.getName();
+	}
+
+	private void gzip(File file) {
+		File gz = new File(file.getPath() + ".gz");
+		File part = new File(gz.getPath() + ".part");
+		try {
+			try (InputStream in = new FileInputStream(file);
+					OutputStream out = new GZIPOutputStream(new FileOutputStream(part), 64 * 1024)) {
+				byte[] buffer = new byte[64 * 1024];
+				int n;
+				while ((n = in.read(buffer)) > 0) {
+					out.write(buffer, 0, n);
+				}
+			}
+			Files.move(part.toPath(), gz.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.delete(file.toPath());
+		} catch (IOException e) {
+			logger.warning("Could not compress " + file + ", keeping it uncompressed: " + e.toString());
+			part.delete();
+		}
+	}
+
+	// Removes the dated folders past the retention, once a day
+	private void purge() {
+		LocalDate today = LocalDate.now();
+		if (today.equals(purged)) {
+			return;
+		}
+		purged = today;
+
+		String oldest = DAY.format(today.minusDays(retentionDays));
+		File[] folders = archive.listFiles();
+		if (folders == null) {
+			return;
+		}
+		for (File folder : folders) {
+			String name = folder.getName();
+			// Only dated folders, the fingerprint index and checkpoints live here too
+			if (folder.isDirectory() && name.matches("\\d{8}") && name.compareTo(oldest) < 0) {
+				try {
+					FileUtils.deleteDirectory(folder);
+					logger.info("Removed archive folder " + name + ", older than " + retentionDays + " days");
+				} catch (IOException e) {
+					logger.warning("Could not remove archive folder " + name + ": " + e.toString());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Lets the queued compressions finish in the background and accepts no more.
+	 */
+	public void shutdown() {
+		compressor.shutdown();
+	}
+}
@@ -0,0 +1,129 @@
+package trax.aero.utils;
+
+import java.io.File;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The state of one input file while it is loaded, so that several files can be
+ * in flight at once without sharing their failures or error log.
+ */
+public class FileJob {
+
+	private final File file;
+	private final int index;
+	private final WorkerContexts contexts;
+	private final EmployeeFingerprintStore fingerprints;
+	private final EmployeeClaims claims;
+	private final StringPool strings;
+
+	private final FailureWriter failures;
+	private final ErrorCollector errors = new ErrorCollector();
+	// Progress of the file across restarts, null if checkpoints are off
+	private volatile CheckpointJournal checkpoint;
+	// Compiled from the header row before the first chunk is submitted
+	private volatile EmployeeColumnBinder binder;
+
+	// One party per chunk still in the pipeline, plus the thread reading the file
+	private final Phaser pending = new Phaser(1);
+	private final AtomicInteger unchanged = new AtomicInteger();
+	private final AtomicInteger superseded = new AtomicInteger();
+	// Set if the interface was stopped before the file was fully loaded
+	private volatile boolean stopped = false;
+
+	/**
+	 * @param file The .pgp or .csv file to load
+	 * @param index The position of the file in the run, older files first
+	 * @param contexts The data-access contexts of the run
+	 * @param fingerprints The fingerprints of the employees already loaded, or null to load every row
+	 * @param claims The claims ordering employees across files, or null if the run has a single file
+	 * @param strings The pool of the run for the low-cardinality columns
+	 */
+	public FileJob(File file, int index, WorkerContexts contexts, EmployeeFingerprintStore fingerprints, EmployeeClaims claims,
+			StringPool strings) {
+		this.file = file;
+		this.index = index;
+		this.contexts = contexts;
+		this.fingerprints = fingerprints;
+		this.claims = claims;
+		this.strings = strings;
+		this.failures = new FailureWriter(reportName(file));
+	}
+
+	// The failure report holds plaintext rows, so an encrypted file's report is named after the decrypted CSV
+	private static String reportName(File file) {
+		String name = file.getName();
+		if (name.toLowerCase().endsWith(".pgp")) {
+			name = name.substring(0, name.indexOf(".")) + ".csv";
+		}
+		return name;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public WorkerContexts getContexts() {
+		return contexts;
+	}
+
+	public EmployeeFingerprintStore getFingerprints() {
+		return fingerprints;
+	}
+
+	public EmployeeClaims getClaims() {
+		return claims;
+	}
+
+	public StringPool getStrings() {
+		return strings;
+	}
+
+	public FailureWriter getFailures() {
+		return failures;
+	}
+
+	public EmployeeColumnBinder getBinder() {
+		return binder;
+	}
+
+	public void setBinder(EmployeeColumnBinder binder) {
+		this.binder = binder;
+	}
+
+	public CheckpointJournal getCheckpoint() {
+		return checkpoint;
+	}
+
+	public void setCheckpoint(CheckpointJournal checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+
+	public ErrorCollector getErrors() {
+		return errors;
+	}
+
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	public void setStopped(boolean stopped) {
+		this.stopped = stopped;
+	}
+
+	public Phaser getPending() {
+		return pending;
+	}
+
+	public AtomicInteger getUnchanged() {
+		return unchanged;
+	}
+
+	public AtomicInteger getSuperseded() {
+		return superseded;
+	}
+}
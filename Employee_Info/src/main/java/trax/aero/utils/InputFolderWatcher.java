@@ -0,0 +1,121 @@
+package trax.aero.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import trax.aero.logger.LogManager;
+
+/**
+ * Triggers a run as soon as HR files land in EmployeeInfo_fileLoc.
+ *
+ * The folder is watched for created and modified .csv and .pgp files. The
+ * trigger fires once no such event has been seen for the quiet period, so a
+ * file still being copied keeps pushing the run back instead of being picked up
+ * half-written. Runs are still swept at EmployeeInfo_interval in case an event
+ * is lost.
+ */
+public class InputFolderWatcher implements Runnable {
+
+	static Logger logger = LogManager.getLogger("EmployeeInfo_I01");
+
+	private final File folder;
+	private final long quietMillis;
+	private final Runnable trigger;
+	private final WatchService watchService;
+	private final Thread thread;
+	private volatile boolean closed = false;
+
+	/**
+	 * @param folder The folder HR files are dropped in
+	 * @param quietMillis The time without new events before the trigger fires
+	 * @param trigger Schedules a run
+	 * @throws IOException if the folder cannot be watched
+	 */
+	public InputFolderWatcher(File folder, long quietMillis, Runnable trigger) throws IOException {
+		this.folder = folder;
+		this.quietMillis = quietMillis;
+		this.trigger = trigger;
+		this.watchService = FileSystems.getDefault().newWatchService();
+		folder.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+		this.thread = new Thread(this, "EmployeeInfo-watcher");
+		this.thread.setDaemon(true);
+		this.thread.start();
+		logger.info("Watching " + folder + " for new files [quiet period =" + quietMillis + "ms]");
+	}
+
+	public void run() {
+		// Time of the last event not yet followed by a run, 0 if none
+		long lastEvent = 0;
+		try {
+			while (!closed) {
+				WatchKey key;
+				if (lastEvent == 0) {
+					key = watchService.take();
+				} else {
+					long remaining = lastEvent + quietMillis - System.currentTimeMillis();
+					if (remaining <= 0) {
+						lastEvent = 0;
+						fire();
+						continue;
+					}
+					key = watchService.poll(remaining, TimeUnit.MILLISECONDS);
+					if (key == null) {
+						continue;
+					}
+				}
+
+				for (WatchEvent<?> event : key.pollEvents()) {
+					// An overflow means events were dropped, so a file may have arrived
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW || isInput(event.context())) {
+						lastEvent = System.currentTimeMillis();
+					}
+				}
+				if (!key.reset()) {
+					logger.severe("Folder " + folder + " can no longer be watched, files are only picked up by the interval sweep");
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			// Closed by close()
+		}
+	}
+
+	private static boolean isInput(Object context) {
+		if (!(context instanceof Path)) {
+			return false;
+		}
+		String name = ((Path) context).getFileName().toString().toLowerCase();
+		return name.endsWith(".csv") || name.endsWith(".pgp");
+	}
+
+	private void fire() {
+		try {
+			logger.info("New files in " + folder + ", triggering a run");
+			trigger.run();
+		} catch (RuntimeException e) {
+			logger.severe("Could not trigger a run: " + e.toString());
+		}
+	}
+
+	public void close() {
+		closed = true;
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			logger.warning(e.toString());
+		}
+		thread.interrupt();
+	}
+}
@@ -0,0 +1,191 @@
+package trax.aero.utils;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import trax.aero.logger.LogManager;
+
+/**
+ * Retries the rows the database turned down for a transient reason: a deadlock,
+ * a lock or pool timeout, a lost connection.
+ *
+ * Such rows are handed back to the load stage after a delay growing
+ * exponentially with the attempt, with a random jitter so workers that collided
+ * do not collide again on the same beat. The number of rows retried in a run is
+ * capped by a budget, so a database that stays down fails the files in about
+ * the usual time instead of retrying every row. Permanent errors (constraints,
+ * bad values) are never retried. Retries still waiting when the policy is shut
+ * down are dropped, and their owners told so.
+ */
+public class RetryPolicy {
+
+	static Logger logger = LogManager.getLogger("EmployeeInfo_I01");
+
+	// Errors of a connection that cannot be used any more
+	private static final String[] CONNECTION_CODES = { "ORA-03113", "ORA-03114", "ORA-03135", "ORA-17002", "ORA-17008",
+			"ORA-17410", "ORA-02396" };
+
+	private final int maxAttempts;
+	private final long baseMillis;
+	private final long maxMillis;
+	private final int budget;
+	private final AtomicInteger remaining = new AtomicInteger();
+	private final ScheduledExecutorService lane;
+	// Retries scheduled and not started yet
+	private final Set<Retry> waiting = ConcurrentHashMap.newKeySet();
+
+	// Runs either the retry or, once the policy is shut down, the dropped callback, never both
+	private final class Retry implements Runnable {
+		private final Runnable retry;
+		private final Runnable dropped;
+		private final AtomicBoolean claimed = new AtomicBoolean();
+
+		Retry(Runnable retry, Runnable dropped) {
+			this.retry = retry;
+			this.dropped = dropped;
+		}
+
+		public void run() {
+			if (claimed.compareAndSet(false, true)) {
+				waiting.remove(this);
+				retry.run();
+			}
+		}
+
+		void drop() {
+			if (claimed.compareAndSet(false, true)) {
+				waiting.remove(this);
+				dropped.run();
+			}
+		}
+	}
+
+	public RetryPolicy() {
+		this.maxAttempts = SystemProperties.getInt("EmployeeInfo_retryAttempts", 3);
+		this.baseMillis = Math.max(1L, SystemProperties.getLong("EmployeeInfo_retryDelay", 500L));
+		this.maxMillis = Math.max(baseMillis, SystemProperties.getLong("EmployeeInfo_retryMaxDelay", 30000L));
+		this.budget = SystemProperties.getInt("EmployeeInfo_retryBudget", 1000);
+		this.remaining.set(budget);
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "EmployeeInfo-retry");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		executor.setRemoveOnCancelPolicy(true);
+		this.lane = executor;
+		RunMetrics.gauge("retry.budget_remaining", () -> remaining.get());
+	}
+
+	/**
+	 * @return true if the error, or one of its causes, may go away on a later attempt
+	 */
+	public static boolean isTransient(Throwable error) {
+		for (Throwable t = error; t != null; t = t.getCause()) {
+			if (t instanceof SQLException) {
+				SQLException e = (SQLException) t;
+				if (ConcurrencyLimiter.isOverload(e) || isConnectionLost(e)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the connection the error came from must be replaced
+	 */
+	public static boolean isConnectionLost(SQLException e) {
+		if (e instanceof SQLRecoverableException || e instanceof SQLNonTransientConnectionException) {
+			return true;
+		}
+		if (e.getSQLState() != null && e.getSQLState().startsWith("08")) {
+			return true;
+		}
+		String message = String.valueOf(e.getMessage());
+		for (String code : CONNECTION_CODES) {
+			if (message.contains(code)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gives the whole budget back, at the start of a run.
+	 */
+	public void startRun() {
+		remaining.set(budget);
+	}
+
+	/**
+	 * The delay before an attempt: base * 2^(attempt - 1), at most the maximum,
+	 * of which a random half is taken off.
+	 */
+	long delay(int attempt) {
+		long cap = Math.min(maxMillis, baseMillis << Math.min(attempt - 1, 30));
+		return ThreadLocalRandom.current().nextLong(cap / 2, cap + 1);
+	}
+
+	/**
+	 * Schedules another attempt at a group of rows, if attempts and budget are left.
+	 *
+	 * @param attempt The attempt to schedule, 1 for the first retry
+	 * @param rows The number of rows retried, taken from the budget
+	 * @param retry Resubmits the rows; runs on the retry thread so it must not block
+	 * @param dropped Called instead of retry if the policy is shut down before the attempt starts
+	 * @return false if the rows must be given up
+	 */
+	public boolean schedule(int attempt, int rows, Runnable retry, Runnable dropped) {
+		if (attempt > maxAttempts) {
+			return false;
+		}
+		int left;
+		do {
+			left = remaining.get();
+			if (left < rows) {
+				logger.warning("Retry budget of the run exhausted, giving up " + rows + " rows");
+				return false;
+			}
+		} while (!remaining.compareAndSet(left, left - rows));
+
+		long delay = delay(attempt);
+		Retry task = new Retry(retry, dropped);
+		waiting.add(task);
+		try {
+			lane.schedule(task, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// Shut down meanwhile, the rows are dropped rather than given up
+			remaining.addAndGet(rows);
+			task.drop();
+			return true;
+		}
+		RunMetrics.count("rows.retried", rows);
+		logger.info("Retrying " + rows + " rows in " + delay + "ms [attempt " + attempt + " of " + maxAttempts + "]");
+		return true;
+	}
+
+	/**
+	 * Drops the retries not started yet, calling their dropped callback; their rows
+	 * are loaded again with the file.
+	 */
+	public void shutdown() {
+		lane.shutdownNow();
+		for (Retry task : waiting) {
+			task.drop();
+		}
+	}
+}
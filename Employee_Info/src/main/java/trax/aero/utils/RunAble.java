@@ -1,36 +1,46 @@
 package trax.aero.utils;
 
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Phaser;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
-import javax.xml.bind.JAXBException;
-
-import org.apache.commons.io.FileUtils;
 
 import com.opencsv.CSVParser;
 import com.opencsv.CSVParserBuilder;
 import com.opencsv.CSVReader;
 import com.opencsv.CSVReaderBuilder;
-import com.opencsv.CSVWriter;
 
 import trax.aero.Encryption.PGPEncryption;
 import trax.aero.controller.EmployeeInfoController;
+import trax.aero.data.EmployeeDirectory;
 import trax.aero.data.EmployeeInfoData;
+import trax.aero.data.TranscodeCache;
 import trax.aero.logger.LogManager;
 import trax.aero.pojo.EmployeeInfo;
 
@@ -42,439 +52,891 @@ public class RunAble implements Runnable {
 	Logger logger = LogManager.getLogger("EmployeeInfo_I01");
 	EmployeeInfoData data = null;
 	EntityManagerFactory factory;
-	private static File inputFiles[],inputFolder  ;
-	public static List<EmployeeInfo> employeesFailure  = null;
+	StageExecutor parseStage, loadStage;
+	FileArchiver archiver;
+	// Chunks written at once when the concurrency follows the database, null for a fixed Thread_Count
+	ConcurrencyLimiter limiter;
+	// Gives rows stopped by a deadlock, timeout or lost connection another attempt, null if disabled
+	RetryPolicy retryPolicy;
+	// Staging-table mode of the current run, see EmployeeInfo_loadMode
+	private volatile boolean bulkMode = false;
+	// Set once the interface is being undeployed, files stop being read
+	private volatile boolean stopping = false;
 	
 	private static FilenameFilter filter = new FilenameFilter() 
 	{		 
 		public boolean accept(File dir, String name) 
 		{
-			return (name.toLowerCase().endsWith(".csv"));
+			return (name.toLowerCase().endsWith(".csv") || name.toLowerCase().endsWith(".pgp"));
 		}
 	};
 	
-	private static FilenameFilter filterEN = new FilenameFilter() 
-	{		 
-		public boolean accept(File dir, String name) 
-		{
-			return (name.toLowerCase().endsWith(".pgp"));
-		}
-	};
+	// Line of the first employee, after the header
+	private static final int FIRST_ROW = 2;
 	
 	public RunAble() {
 		factory = Persistence.createEntityManagerFactory("TraxStandaloneDS");
-		data = new EmployeeInfoData();
+		data = new EmployeeInfoData(factory);
+		archiver = new FileArchiver();
+		if (SystemProperties.getInt("EmployeeInfo_retryAttempts", 3) > 0) {
+			retryPolicy = new RetryPolicy();
+		}
+		
+		// The stages live as long as the interface, files only add work to them
+		int threads = SystemProperties.getInt("Thread_Count", 4);
+		parseStage = new StageExecutor("parse", SystemProperties.getInt("EmployeeInfo_parseThreads", 1),
+				SystemProperties.getInt("EmployeeInfo_parseQueue", 4));
+		int loadQueue = SystemProperties.getInt("EmployeeInfo_loadQueue", 2 * threads);
+		int loadThreads = threads;
+		if (SystemProperties.getBoolean("EmployeeInfo_adaptiveConcurrency", false)) {
+			// The stage gets enough threads for the highest limit, the limiter decides how many write
+			int maxConcurrency = SystemProperties.getInt("EmployeeInfo_maxConcurrency", 2 * threads);
+			limiter = new ConcurrencyLimiter(threads, SystemProperties.getInt("EmployeeInfo_minConcurrency", 1), maxConcurrency);
+			loadThreads = Math.max(threads, maxConcurrency);
+			RunMetrics.gauge("concurrency.limit", limiter::getLimit);
+			RunMetrics.gauge("concurrency.in_flight", limiter::getInFlight);
+		}
+		// Virtual threads spend their time blocked on JDBC, so the connection pool is the only limit
+		if ("virtual".equalsIgnoreCase(SystemProperties.getString("EmployeeInfo_executionMode", "platform"))) {
+			loadStage = StageExecutor.virtualOrPlatform("load", SystemProperties.getInt("EmployeeInfo_dbPoolSize", loadThreads),
+					loadThreads, loadQueue);
+		} else {
+			loadStage = new StageExecutor("load", loadThreads, loadQueue);
+		}
+	}
+	
+	/**
+	 * Stops reading files and lets the chunks already in the pipeline finish. A file
+	 * cut short is left in the input folder and resumes from its checkpoint at the
+	 * next start.
+	 */
+	public void shutdown() {
+		stopping = true;
+		long timeout = 1000L * SystemProperties.getLong("EmployeeInfo_shutdownTimeout", 60L);
+		// Waiting retries are dropped first, their chunks are released instead of holding up the drain
+		if (retryPolicy != null) {
+			retryPolicy.shutdown();
+		}
+		// Parse tasks feed the load stage, so they are drained first
+		parseStage.shutdown(timeout);
+		loadStage.shutdown(timeout);
+		archiver.shutdown();
 	}
 	
 	private String insertFile(File file, String outcome) 
 	{
-		DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyyMMdd");
-		LocalDateTime  currentDateTime = LocalDateTime.now();
-		
-		File todayFolder = new File(System.getProperty("EmployeeInfo_compFiles")+ File.separator + dtf.format(currentDateTime));
-		if (!todayFolder.isDirectory())			
-			todayFolder.mkdir();
+		// Moved rather than copied, and compressed in the background
+		String output = archiver.archive(file, outcome);
 		
+		if (output != null) {
+			logger.info("DONE processing file " + file.getName() );
+		}
 		
+		return output;
+	}
+	
+	/**
+	 * Streams the employees of a CSV file through the pipeline: this thread reads raw rows,
+	 * the parse stage maps and filters them and the load stage upserts them, one chunk at a
+	 * time. Reading blocks while the stages are behind.
+	 * 
+	 * A chunk is committed as one unit of work, so it closes after EmployeeInfo_commitRows rows,
+	 * or after EmployeeInfo_commitMillis if the file comes in slowly (e.g. while it is decrypted).
+	 * 
+	 * @param input The character stream of the CSV file, closed before returning
+	 * @param job The file being loaded
+	 * @return false if the file could not be read to the end
+	 */
+	private boolean loadEmployees(Reader input, FileJob job) throws Exception
+	{
+		int batchSize = Math.max(1, SystemProperties.getInt("EmployeeInfo_batchSize", 100));
 		
-		File output =  new File(todayFolder + File.separator
-			+ outcome + Calendar.getInstance().getTimeInMillis() + "_" + file.getName());
+		CSVParser parser = new CSVParserBuilder().withSeparator(SeparatorFilterReader.SEPARATOR).build();
+		CSVReader csvReader = new CSVReaderBuilder(new SeparatorFilterReader(input))
+                 .withCSVParser(parser)
+                 .build();
 		
+		// The layout of the file comes from its header row
+		String[] header;
 		try {
-			FileUtils.copyFile(file, output);
-		} catch (IOException e) {
-			
+			header = csvReader.readNext();
+			if (header == null) {
+				throw new Exception("The file is empty");
+			}
+			job.setBinder(EmployeeColumnBinder.forHeader(header, job.getStrings()));
+		} catch (Exception e) {
+			EmployeeInfoController.addError(e.toString());
+			close(csvReader);
+			return false;
 		}
-		file.delete();
-		
 		
-		logger.info("DONE processing file " + file.getName() );
+		if (bulkMode) {
+			return stageEmployees(csvReader, batchSize, job);
+		}
 		
-		return output.getName();
+		int commitRows = Math.max(1, SystemProperties.getInt("EmployeeInfo_commitRows", 1000));
+		long commitMillis = Math.max(0, SystemProperties.getLong("EmployeeInfo_commitMillis", 2000L));
+		CheckpointJournal checkpoint = job.getCheckpoint();
+		int resumed = checkpoint != null ? checkpoint.getResumed() : 0;
+		boolean read = true;
+		int rows = 0;
+		long readStart = System.nanoTime();
+		try {
+			List<String[]> chunk = new ArrayList<String[]>(commitRows);
+			long opened = 0;
+			try {
+				String[] row;
+				while (!stopping && (row = csvReader.readNext()) != null) {
+					rows++;
+					if (rows <= resumed) {
+						// Committed before a restart, skills included. The row is still read, as
+						// neither the CSV reader nor a decrypted stream can seek past it
+						continue;
+					}
+					if (chunk.isEmpty()) {
+						opened = System.currentTimeMillis();
+					}
+					chunk.add(row);
+					
+					if (chunk.size() == commitRows || (commitMillis > 0 && System.currentTimeMillis() - opened >= commitMillis)) {
+						submitChunk(chunk, rows - chunk.size() + FIRST_ROW, job);
+						chunk = new ArrayList<String[]>(commitRows);
+					}
+				}
+				if (!chunk.isEmpty() && !stopping) {
+					submitChunk(chunk, rows - chunk.size() + FIRST_ROW, job);
+				}
+			} catch (Exception e) {
+				// Rows read before the error are still loaded, the file is reported as failed
+				EmployeeInfoController.addError(e.toString());
+				read = false;
+			} finally {
+				// Closing a .pgp stream checks its integrity, a failed check fails the file
+				if (!close(csvReader)) {
+					read = false;
+				}
+				// Includes the time spent waiting for room in the pipeline
+				RunMetrics.time("read", readStart);
+			}
+			
+			// Wait for the chunks of this file only, the stages stay up for the next one
+			awaitPending(job);
+			if (stopping) {
+				job.setStopped(true);
+				logger.warning("Stopped while loading " + job.getFile().getName() + " after " + rows
+						+ " rows, it resumes from its checkpoint at the next start");
+				return read;
+			}
+			logger.info("SIZE " + rows + ", RESUMED " + Math.min(rows, resumed) + ", UNCHANGED " + job.getUnchanged().get()
+					+ ", SUPERSEDED " + job.getSuperseded().get() + " for file " + job.getFile().getName());
+			RunMetrics.count("rows.read", rows);
+			RunMetrics.count("rows.resumed", Math.min(rows, resumed));
+			RunMetrics.count("rows.unchanged", job.getUnchanged().get());
+			RunMetrics.count("rows.superseded", job.getSuperseded().get());
+		} finally {
+			if (job.getFingerprints() != null) {
+				job.getFingerprints().flush();
+			}
+			if (checkpoint != null) {
+				checkpoint.flush();
+			}
+		}
+		return read;
 	}
 	
+	/**
+	 * Waits for the chunks of a file still in the pipeline. If the interface is stopped
+	 * and its stages had to drop tasks, those never arrive and the wait ends once the
+	 * stages are down.
+	 * 
+	 * @param job The file being loaded
+	 */
+	private void awaitPending(FileJob job) throws InterruptedException
+	{
+		Phaser pending = job.getPending();
+		int phase = pending.arrive();
+		while (true) {
+			try {
+				pending.awaitAdvanceInterruptibly(phase, 1, TimeUnit.SECONDS);
+				return;
+			} catch (TimeoutException e) {
+				if (stopping && parseStage.isTerminated() && loadStage.isTerminated()) {
+					logger.warning("Chunks of " + job.getFile().getName() + " were dropped by the shutdown");
+					return;
+				}
+			}
+		}
+	}
 	
-	
-	private String insertFileFailed(ArrayList<EmployeeInfo> employeeFailure, String outcome, String fileName) throws JAXBException, IOException
+	/**
+	 * Closes the rows of a file, reporting the error if the stream fails to close.
+	 * 
+	 * @param csvReader The rows of the file
+	 * @return false if the stream could not be closed cleanly
+	 */
+	private boolean close(CSVReader csvReader)
 	{
-		DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyyMMdd");
-		LocalDateTime currentDateTime = LocalDateTime.now();
-		
-
-		
-		
-        List<String[]> data = new ArrayList<String[]>();
-        String[] header = {"EMPLOYEE_ID","RELATION_CODE","FULL_NAME","FIRST_NAME","LAST_NAME","RELATED_LOCATION",
-                          "POSITION_CODE","POSITION","DATE_OF_BIRTH","DEPARTMENT","DEPARTMENT_DESCRIPTION",
-                          "DIVISION","DIVISION_DESCRIPTION","MAIL_PHONE","MAIL_EMAIL",
-                          "DATE_HIRED","DATE_TERMINATED","PROFILE","COMPANY_NAME","COST_CODE",
-                          "SKILL","SKILL_DESCIPTION","GRADE_CODE","STATUS"};
-        data.add(header);
-        
-        for(EmployeeInfo e : employeeFailure) {
-        	String[] arr = new String[header.length];
-            for(int i = 0; i < arr.length; i++) {
-                arr[i] = "";
-            }
-            
-        	if(e.getEmployeeId() != null && !e.getEmployeeId().isEmpty()) {
-        		arr[0] = e.getEmployeeId();
-        	}
-        	if(e.getRelationCode() != null && !e.getRelationCode().isEmpty()) {
-        		arr[1] = e.getRelationCode();
-        	}
-        	if(e.getFullName() != null && !e.getFullName().isEmpty()) {
-        		arr[2] = e.getFullName();
-        	}
-        	if(e.getFirstName() != null && !e.getFirstName().isEmpty()) {
-        		arr[3] = e.getFirstName();
-        	}
-        	if(e.getLastName() != null && !e.getLastName().isEmpty()) {
-        		arr[4] = e.getLastName();
-        	}
-        	if(e.getRelatedLocation() != null && !e.getRelatedLocation().isEmpty()) {
-        		arr[5] = e.getRelatedLocation();
-        	}
-        	if(e.getPositionCode() != null && !e.getPositionCode().isEmpty()) {
-        		arr[6] = e.getPositionCode();
-        	}
-        	if(e.getPosition() != null && !e.getPosition().isEmpty()) {
-        		arr[7] = e.getPosition();
-        	}
-        	if(e.getDateOfBirth() != null && !e.getDateOfBirth().isEmpty()) {
-        		arr[8] = e.getDateOfBirth();
-        	}
-        	if(e.getDepartment() != null && !e.getDepartment().isEmpty()) {
-        		arr[9] = e.getDepartment();
-        	}
-        	if(e.getDepartmentDescription() != null && !e.getDepartmentDescription().isEmpty()) {
-        		arr[10] = e.getDepartmentDescription();
-        	}
-        	if(e.getDivision() != null && !e.getDivision().isEmpty()) {
-        		arr[11] = e.getDivision();
-        	}
-        	if(e.getDivisionDescription() != null && !e.getDivisionDescription().isEmpty()) {
-        		arr[12] = e.getDivisionDescription();
-        	}
-        	if(e.getMailPhone() != null && !e.getMailPhone().isEmpty()) {
-        		arr[13] = e.getMailPhone();
-        	}
-        	if(e.getMailEmail() != null && !e.getMailEmail().isEmpty()) {
-        		arr[14] = e.getMailEmail();
-        	}
-        	if(e.getDateHired() != null && !e.getDateHired().isEmpty()) {
-        		arr[15] = e.getDateHired();
-        	}
-        	if(e.getDateTerminated() != null && !e.getDateTerminated().isEmpty()) {
-        		arr[16] = e.getDateTerminated();
-        	}
-        	if(e.getProfile() != null && !e.getProfile().isEmpty()) {
-        		arr[17] = e.getProfile();
-        	}
-        	if(e.getCompanyName() != null && !e.getCompanyName().isEmpty()) {
-        		arr[18] = e.getCompanyName();
-        	}
-        	if(e.getCostCode() != null && !e.getCostCode().isEmpty()) {
-        		arr[19] = e.getCostCode();
-        	}
-        	if(e.getSkill() != null && !e.getSkill().isEmpty()) {
-        		arr[20] = e.getSkill();
-        	}
-        	if(e.getSkillDescription() != null && !e.getSkillDescription().isEmpty()) {
-        		arr[21] = e.getSkillDescription();
-        	}
-        	if(e.getGradeCode() != null && !e.getGradeCode().isEmpty()) {
-        		arr[22] = e.getGradeCode();
-        	}
-        	if(e.getStatus() != null && !e.getStatus().isEmpty()) {
-        		arr[23] = e.getStatus();
-        	}
-        	
-        	data.add(arr);
-        }
-        
-		File compFolder = new File(System.getProperty("EmployeeInfo_compFiles"));
-		if (!compFolder.isDirectory())
-		compFolder.mkdir();
-		File todayFolder = new File(System.getProperty("EmployeeInfo_compFiles")+ File.separator + dtf.format(currentDateTime));
-		if (!todayFolder.isDirectory())
-		todayFolder.mkdir();
+		try {
+			csvReader.close();
+			return true;
+		} catch (IOException e) {
+			logger.severe(e.toString());
+			EmployeeInfoController.addError(e.toString());
+			return false;
+		}
+	}
 	
-		File output = new File(todayFolder + File.separator
-		+ outcome + "_"+ Calendar.getInstance().getTimeInMillis() + "_" + fileName);
-		
-        FileWriter outputfile = new FileWriter(output);
-  
-
-        CSVWriter writer = new CSVWriter(outputfile, '|',
-                                         CSVWriter.NO_QUOTE_CHARACTER,
-                                         CSVWriter.DEFAULT_ESCAPE_CHARACTER,
-                                         CSVWriter.DEFAULT_LINE_END);
+	/**
+	 * Bulk mode: stages every changed employee of the file in the session's staging table
+	 * with JDBC batches, then applies them all with a few set-based statements. Everything
+	 * runs on one leased context, as the staging table is private to the session.
+	 * 
+	 * @param csvReader The rows of the file, closed before returning
+	 * @param batchSize The number of rows per staging batch
+	 * @param job The file being loaded
+	 * @return false if the file could not be read to the end
+	 */
+	private boolean stageEmployees(CSVReader csvReader, int batchSize, FileJob job) throws Exception
+	{
+		EmployeeInfoData stage = job.getContexts().lease();
+		EmployeeFingerprintStore fingerprints = job.getFingerprints();
+		List<EmployeeInfo> staged = new ArrayList<EmployeeInfo>();
+		boolean read = true;
+		int rows = 0;
 		
-        writer.writeAll(data);
-        writer.close();
-        outputfile.close();
-        
-        logger.info("DONE processing file " + output.getName());
-		return output.getName();
-	}
-	private void process() {
-		try 
-		{
-			//setting up variables
-			final String process = System.getProperty("EmployeeInfo_fileLoc");
-			inputFolder = new File(process);
-			String exectued = "OK",outcome = "PROCESSED_";
-			ArrayList<EmployeeInfo> employees = new ArrayList<EmployeeInfo>();
-			
-			int itr;
-			EmployeeInfo employee = null;
-			
+		try {
+			long stageStart = System.nanoTime();
+			stage.beginStage();
 			
-			if (inputFolder.isDirectory())
-			{
-				inputFiles = inputFolder.listFiles(filterEN);
-			}
-			else
-			{
-				logger.severe("Path: " + inputFolder.toString() + " is not a directory or does not exist");
-				throw new Exception("Path: " + inputFolder.toString() + " is not a directory or does not exist");
-			}
+			List<EmployeeInfo> chunk = new ArrayList<EmployeeInfo>(batchSize);
+			try {
+				String[] row;
+				while (!stopping && (row = csvReader.readNext()) != null) {
+					EmployeeInfo employee = job.getBinder().bind(row);
+					employee.setRowNumber(rows + FIRST_ROW);
+					rows++;
 					
-			for (int i = 0; i < inputFiles.length; i++)
-			{
-				outcome = "PROCESSED_";
-				logger.info("Decrypting file " + inputFiles[i].toString());
-				File file = new File(inputFiles[i].toString());
-				try {
-					try {
-						logger.info("keyFile " + PGPEncryption.getEncryptionfile());
-						PGPEncryption.decryptFile(file.getAbsolutePath(),PGPEncryption.getEncryptionfile() ,PGPEncryption.getEncryptionpassphrase().toCharArray() ,  file.getName().substring(0, file.getName().indexOf(".")) + ".csv" ,process );
-							
-						file.delete();	
+					if (fingerprints != null && fingerprints.isUnchanged(employee)) {
+						job.getUnchanged().incrementAndGet();
+						continue;
+					}
+					chunk.add(employee);
 					
-					}catch(Exception e){
-						EmployeeInfoController.addError(e.toString());
-						outcome = "FAILURE_";
-						throw new Exception("Failed to read file");
-						
+					if (chunk.size() == batchSize) {
+						stageChunk(stage, chunk, staged, job);
+						chunk = new ArrayList<EmployeeInfo>(batchSize);
 					}
-				}catch(Exception e) {
-					EmployeeInfoController.addError(e.toString());
-					String output = insertFile(file,outcome);
-					EmployeeInfoController.addError("Failed File "  + output);
-					EmployeeInfoController.sendEmailFile(file);
-					logger.severe(e.toString());
 				}
+				if (!chunk.isEmpty()) {
+					stageChunk(stage, chunk, staged, job);
+				}
+			} catch (Exception e) {
+				// Rows read before the error are still loaded, the file is reported as failed
+				EmployeeInfoController.addError(e.toString());
+				read = false;
+			} finally {
+				// Closing a .pgp stream checks its integrity, nothing of a file failing it is applied
+				if (!close(csvReader)) {
+					read = false;
+					staged.clear();
+				}
+				RunMetrics.time("stage", stageStart);
+			}
+			// A file cut short is not applied, it is loaded again in full at the next start
+			if (stopping) {
+				job.setStopped(true);
+				logger.warning("Stopped while staging " + job.getFile().getName() + ", it is loaded again at the next start");
+				return read;
 			}
-				
-				
-			
-			
-			
-			
 			
+			if (!staged.isEmpty()) {
+				String tag = "I01 " + job.getFile().getName() + " " + System.currentTimeMillis();
+				long reconcileStart = System.nanoTime();
+				List<EmployeeInfo> failures = stage.reconcileStage(tag, staged);
+				RunMetrics.time("reconcile", reconcileStart);
+				job.getFailures().addAll(failures);
+				RunMetrics.count("rows.loaded", staged.size() - failures.size());
+				
+				if (fingerprints != null) {
+					Set<EmployeeInfo> failed = Collections.newSetFromMap(new IdentityHashMap<EmployeeInfo, Boolean>());
+					failed.addAll(failures);
+					for (EmployeeInfo e : staged) {
+						if (!failed.contains(e)) {
+							fingerprints.put(e);
+						}
+					}
+				}
+			}
+			logger.info("SIZE " + rows + ", UNCHANGED " + job.getUnchanged().get() + ", STAGED " + staged.size()
+					+ " for file " + job.getFile().getName());
+			RunMetrics.count("rows.read", rows);
+			RunMetrics.count("rows.unchanged", job.getUnchanged().get());
+		} finally {
+			job.getContexts().release(stage);
+			if (fingerprints != null) {
+				fingerprints.flush();
+			}
+		}
+		return read;
+	}
+	
+	private void stageChunk(EmployeeInfoData stage, List<EmployeeInfo> chunk, List<EmployeeInfo> staged, FileJob job)
+	{
+		List<EmployeeInfo> failures = stage.stageEmployees(chunk);
+		job.getFailures().addAll(failures);
+		
+		Set<EmployeeInfo> failed = Collections.newSetFromMap(new IdentityHashMap<EmployeeInfo, Boolean>());
+		failed.addAll(failures);
+		for (EmployeeInfo e : chunk) {
+			if (!failed.contains(e)) {
+				staged.add(e);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Fails a chunk that could not be handed to the load stage, so neither the file nor
+	 * the newer files waiting for its employees wait for it.
+	 * 
+	 * @param job The file the chunk belongs to
+	 * @param employees The employees of the chunk
+	 * @param error Why the chunk was not loaded
+	 * @param written Completed once the chunk is out of the pipeline
+	 */
+	private void rejectChunk(FileJob job, List<EmployeeInfo> employees, Throwable error, CompletableFuture<Void> written)
+	{
+		logger.severe("Could not load a chunk of " + job.getFile().getName() + ": " + error.toString());
+		for (EmployeeInfo e : employees) {
+			e.setError("Error loading employee: " + error.toString());
+		}
+		// Reported before the party arrives, the file's report is closed once every party has
+		job.getFailures().addAll(employees);
+		job.getPending().arriveAndDeregister();
+		written.complete(null);
+	}
+	
+	/**
+	 * Runs a worker within the concurrency limit, then schedules another attempt at the rows it
+	 * could not write for a transient reason.
+	 * 
+	 * @param job The file the rows belong to
+	 * @param worker The worker holding the rows
+	 * @param attempt The next retry, 1 for the first run of the chunk
+	 * @param clean Cleared if an attempt stopped on an unexpected error
+	 * @param finish Called once, after the last attempt
+	 */
+	private void load(final FileJob job, final Worker worker, final int attempt, final AtomicBoolean clean, final Runnable finish)
+	{
+		boolean finished = true;
+		try {
+			if (limiter != null) {
+				limiter.acquire();
+			}
+			try {
+				worker.run();
+			} finally {
+				if (limiter != null) {
+					limiter.release();
+				}
+			}
+			if (!"OK".equals(worker.getExecuted())) {
+				clean.set(false);
+			}
 			
-			//logic taken from AIMS_Flight_Interface
-			if (inputFolder.isDirectory())
-			{
-				inputFiles = inputFolder.listFiles(filter);
+			final List<EmployeeInfo> retries = worker.getRetries();
+			if (!retries.isEmpty() && stopping) {
+				// Not failed, the chunk is loaded again from the checkpoint at the next start
+				clean.set(false);
+			} else if (!retries.isEmpty()) {
+				final Worker retry = new Worker(job);
+				retry.setInput(retries);
+				retry.setRetry(true);
+				// Dropped by a shutdown before the attempt started
+				final Runnable dropped = new Runnable() {
+					public void run() {
+						clean.set(false);
+						finish.run();
+					}
+				};
+				finished = !retryPolicy.schedule(attempt, retries.size(), new Runnable() {
+					public void run() {
+						try {
+							loadStage.submitNow(new Runnable() {
+								public void run() {
+									load(job, retry, attempt + 1, clean, finish);
+								}
+							});
+						} catch (RuntimeException e) {
+							if (stopping) {
+								dropped.run();
+								return;
+							}
+							logger.severe(e.toString());
+							giveUp(job, retries);
+							finish.run();
+						}
+					}
+				}, dropped);
+				if (finished) {
+					giveUp(job, retries);
+				}
 			}
-			else
-			{
-				logger.severe("Path: " + inputFolder.toString() + " is not a directory or does not exist");
-				throw new Exception("Path: " + inputFolder.toString() + " is not a directory or does not exist");
+		} catch (InterruptedException e) {
+			clean.set(false);
+			Thread.currentThread().interrupt();
+		} finally {
+			if (finished) {
+				finish.run();
 			}
-					
-			for (int i = 0; i < inputFiles.length; i++)
-			{
-				outcome = "PROCESSED_";
-				logger.info("Checking file " + inputFiles[i].toString());
-				File file = new File(inputFiles[i].toString());
-				try
-				{	
-					
-					//logger.info("Input: "+ FileUtils.readFileToString(file, StandardCharsets.UTF_8));
-					
-					// To handle separator "||", first we read the content and replace "||" for a unique separator
-					String fileContent = FileUtils.readFileToString(file, "UTF-8");
-					fileContent = fileContent.replace("||", "\u0001"); // Using an uncommon char
-					
-					// Write the modified file on a temp file
-					File tempFile = new File(file.getParent(), "temp_" + file.getName());
-					FileUtils.writeStringToFile(tempFile, fileContent, "UTF-8");
-					
-					// Use FileReader with the temp file
-					FileReader filereader = new FileReader(tempFile);
-					
-					CSVParser parser = new CSVParserBuilder().withSeparator('\u0001').build();
-					
-					CSVReader csvReader = new CSVReaderBuilder(filereader)
-                             .withCSVParser(parser)
-                             .withSkipLines(1)
-                             .build();
-					 
-					 
+		}
+	}
+	
+	// Fails the rows left to retry, with the last error they met
+	private void giveUp(FileJob job, List<EmployeeInfo> retries)
+	{
+		EmployeeInfoController.bindErrors(job.getErrors());
+		try {
+			for (EmployeeInfo e : retries) {
+				EmployeeInfoController.addError(e, e.getError());
+			}
+		} finally {
+			EmployeeInfoController.unbindErrors();
+		}
+		job.getFailures().addAll(retries);
+	}
+	
+	/**
+	 * Hands a chunk of raw rows to the parse stage, which maps them, drops the unchanged
+	 * employees and those a newer file also holds, and passes the rest on to the load stage.
+	 * 
+	 * @param rows The raw rows
+	 * @param firstRow The line of the first row in the file
+	 * @param job The file being loaded
+	 */
+	private void submitChunk(final List<String[]> rows, final int firstRow, final FileJob job) throws InterruptedException
+	{
+		final Phaser pending = job.getPending();
+		final CheckpointJournal checkpoint = job.getCheckpoint();
+		pending.register();
+		try {
+			parseStage.submit(new Runnable() {
+				public void run() {
+					EmployeeInfoController.bindErrors(job.getErrors());
+					long start = System.nanoTime();
+					// Completed once the chunk is written, for newer files holding the same employees
+					final CompletableFuture<Void> written = new CompletableFuture<Void>();
 					try {
-						List<String[]> allData = csvReader.readAll();
-						 
-						for (String[] row : allData) {
-							itr = 0;
-							employee = new EmployeeInfo();
-							for (String cell : row) {	            	
-								 
-								if(itr == 0) {
-									employee.setEmployeeId(cell);           // EMPLOYEE_ID
-								}
-								if(itr == 1) {
-									employee.setRelationCode(cell);         // RELATION_CODE
-								}
-								if(itr == 2) {
-									employee.setFullName(cell);             // FULL_NAME
-								}
-								if(itr == 3) {
-									employee.setFirstName(cell);            // FIRST_NAME
-								}
-								if(itr == 4) {
-									employee.setLastName(cell);             // LAST_NAME
-								}
-								if(itr == 5) {
-									employee.setRelatedLocation(cell);      // RELATED_LOCATION
-								}
-								if(itr == 6) {
-									employee.setPositionCode(cell);         // POSITION_CODE
-								}
-								if(itr == 7) {
-									employee.setPosition(cell);             // POSITION
-								}
-								if(itr == 8) {
-									employee.setDateOfBirth(cell);          // DATE_OF_BIRTH
-								}
-								if(itr == 9) {
-									employee.setDepartment(cell);           // DEPARTMENT
-								}
-								if(itr == 10) {
-									employee.setDepartmentDescription(cell); // DEPARTMENT_DESCRIPTION
-								}
-								if(itr == 11) {
-									employee.setDivision(cell);             // DIVISION
-								}
-								if(itr == 12) {
-									employee.setDivisionDescription(cell);  // DIVISION_DESCRIPTION
-								}
-								if(itr == 13) {
-									employee.setMailPhone(cell);            // MAIL_PHONE
-								}
-								if(itr == 14) {
-									employee.setMailEmail(cell);            // MAIL_EMAIL
-								}
-								if(itr == 15) {
-									employee.setDateHired(cell);            // DATE_HIRED 
-								}
-								if(itr == 16) {
-									employee.setDateTerminated(cell);       // DATE_TERMINATED 
-								}
-								if(itr == 17) {
-									employee.setProfile(cell);              // PROFILE 
-								}
-								if(itr == 18) {
-									employee.setCompanyName(cell);          // COMPANY_NAME 
-								}
-								if(itr == 19) {
-									employee.setCostCode(cell);             // COST_CODE 
-								}
-								if(itr == 20) {
-									employee.setSkill(cell);                // SKILL
+						List<EmployeeInfo> employees = new ArrayList<EmployeeInfo>(rows.size());
+						List<CompletableFuture<Void>> predecessors = new ArrayList<CompletableFuture<Void>>();
+						// Superseded rows whose skill is still added, and the writes of the newer files owning them
+						List<EmployeeInfo> supersededSkills = new ArrayList<EmployeeInfo>();
+						List<CompletableFuture<Void>> owners = new ArrayList<CompletableFuture<Void>>();
+						
+						for (int i = 0; i < rows.size(); i++) {
+							EmployeeInfo employee = job.getBinder().bind(rows.get(i));
+							employee.setRowNumber(firstRow + i);
+							
+							CompletableFuture<Void> predecessor = EmployeeClaims.NONE;
+							if (job.getClaims() != null) {
+								predecessor = job.getClaims().claim(employee.getRelationCode(), job.getIndex(), written);
+								if (predecessor == null) {
+									job.getSuperseded().incrementAndGet();
+									// The newer row replaces the employee, but skills only ever add up
+									if (employee.getSkill() != null && !employee.getSkill().isEmpty()) {
+										supersededSkills.add(employee);
+										owners.add(job.getClaims().owner(employee.getRelationCode()));
+									}
+									continue;
 								}
-								if(itr == 21) {
-									employee.setSkillDescription(cell);     // SKILL_DESCRIPTION
+							}
+							
+							// Employees loaded before with the same values need no DB work at all,
+							// unless an older file of the run is still writing them
+							if (predecessor.isDone()) {
+								if (job.getFingerprints() != null && job.getFingerprints().isUnchanged(employee)) {
+									job.getUnchanged().incrementAndGet();
+									continue;
 								}
-								if(itr == 22) {
-									employee.setGradeCode(cell);            // GRADE_CODE
+							} else {
+								predecessors.add(predecessor);
+							}
+							employees.add(employee);
+						}
+						
+						final AtomicBoolean clean = new AtomicBoolean(true);
+						// The chunk is checkpointed once its rows and the skills of its superseded rows are done
+						final AtomicInteger parts = new AtomicInteger(supersededSkills.isEmpty() ? 1 : 2);
+						final Runnable checkpointed = new Runnable() {
+							public void run() {
+								// Rows of a chunk that stopped on an unexpected error are loaded again after a restart
+								if (parts.decrementAndGet() == 0 && checkpoint != null && clean.get()) {
+									checkpoint.done(firstRow - FIRST_ROW, rows.size());
 								}
-								if(itr == 23) {
-									employee.setStatus(cell);               // STATUS
+							}
+						};
+						if (!supersededSkills.isEmpty()) {
+							syncSkills(job, supersededSkills, owners, clean, checkpointed);
+						}
+						if (employees.isEmpty()) {
+							written.complete(null);
+							checkpointed.run();
+							return;
+						}
+						
+						// Each worker upserts one chunk of employees as a single unit of work and commit
+						final Worker worker = new Worker(job);
+						worker.setInput(employees);
+						worker.setRetry(retryPolicy != null);
+						// Runs once every row of the chunk is written or failed, retries included
+						final Runnable finish = new Runnable() {
+							public void run() {
+								checkpointed.run();
+								written.complete(null);
+								pending.arriveAndDeregister();
+							}
+						};
+						final Runnable load = new Runnable() {
+							public void run() {
+								load(job, worker, 1, clean, finish);
+							}
+						};
+						
+						pending.register();
+						if (predecessors.isEmpty()) {
+							try {
+								loadStage.submit(load);
+							} catch (Exception e) {
+								if (e instanceof InterruptedException) {
+									Thread.currentThread().interrupt();
 								}
-								
-								itr++;				                
+								rejectChunk(job, employees, e, written);
 							}
-							
-							employees.add(employee);
-						   
-						}   
-						 
-					}catch(Exception e){
-						EmployeeInfoController.addError(e.toString());
-						 
-						outcome = "FAILURE_";
-						throw new Exception("Failed to read file");
-					}finally {
-						csvReader.close();
-						filereader.close();
-						// Delete temp file
-						tempFile.delete();
+						} else {
+							// Released by the last older chunk to finish, possibly on a load thread
+							CompletableFuture.allOf(predecessors.toArray(new CompletableFuture<?>[predecessors.size()]))
+								.whenComplete((result, error) -> {
+									if (error != null) {
+										rejectChunk(job, employees, error, written);
+										return;
+									}
+									try {
+										loadStage.submitNow(load);
+									} catch (RuntimeException e) {
+										rejectChunk(job, employees, e, written);
+									}
+								});
+						}
+					} catch (RuntimeException e) {
+						written.complete(null);
+						throw e;
+					} finally {
+						RunMetrics.time("parse", start);
+						EmployeeInfoController.unbindErrors();
+						pending.arriveAndDeregister();
 					}
-					
-					 
-					employeesFailure = Collections.synchronizedList(new ArrayList<EmployeeInfo>());
-				
-					int scheduledPoolSize = 4;
-					if(System.getProperty("Thread_Count") != null && !System.getProperty("Thread_Count").isEmpty()) {
-						scheduledPoolSize = Integer.parseInt(System.getProperty("Thread_Count"));
+				}
+			});
+		} catch (InterruptedException | RuntimeException e) {
+			// Not queued (interrupted, or the stage is shut down), the chunk is not waited for
+			pending.arriveAndDeregister();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Adds the skills of rows a newer file of the run has taken over, once the newer rows
+	 * are written so the employees exist. Runs on the load stage without holding a thread
+	 * while it waits.
+	 * 
+	 * @param job The file the rows belong to
+	 * @param employees The superseded rows with a skill
+	 * @param owners The writes of the newer files owning the employees
+	 * @param clean Cleared if the skills could not be synchronised
+	 * @param done Called once the skills are synchronised or failed
+	 */
+	private void syncSkills(final FileJob job, final List<EmployeeInfo> employees, List<CompletableFuture<Void>> owners,
+			final AtomicBoolean clean, final Runnable done)
+	{
+		final Phaser pending = job.getPending();
+		pending.register();
+		final Runnable sync = new Runnable() {
+			public void run() {
+				EmployeeInfoController.bindErrors(job.getErrors());
+				long start = System.nanoTime();
+				try {
+					if (limiter != null) {
+						limiter.acquire();
 					}
-					logger.info("Creating default Scheduled Executor Service [poolSize =" + String.valueOf(scheduledPoolSize) + "]");
-					ScheduledExecutorService scheduledServ = Executors.newScheduledThreadPool(scheduledPoolSize);
-					
-					logger.info("SIZE " + employees.size());
-					 
-					for(EmployeeInfo e: employees) {
-						exectued = "OK";
-						Worker worker = new Worker(factory);
-						worker.setInput(e);
-						scheduledServ.execute(worker);
+					EmployeeInfoData data = job.getContexts().lease();
+					try {
+						job.getFailures().addAll(data.syncSkills(employees));
+					} finally {
+						job.getContexts().release(data);
+						if (limiter != null) {
+							limiter.release();
+						}
 					}
-			       
-					scheduledServ.shutdown();
-					scheduledServ.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);	 			        			        
-					String fileName = file.getName(); 
-
-					if(!employeesFailure.isEmpty()){
-						exectued = insertFileFailed(new ArrayList<EmployeeInfo>(employeesFailure),"FAILURE_",fileName);
-						employeesFailure = null;
-						throw new Exception("Failed Employees are in File " + exectued);
+				} catch (Exception e) {
+					if (e instanceof InterruptedException) {
+						Thread.currentThread().interrupt();
 					}
-				   
+					failSkills(job, employees, e, clean);
+				} finally {
+					RunMetrics.time("skills", start);
+					EmployeeInfoController.unbindErrors();
+					done.run();
+					pending.arriveAndDeregister();
 				}
-				catch(Exception e)
-				{
-					e.printStackTrace();
-					logger.severe(e.toString());
-					EmployeeInfoController.addError(e.toString());
-					EmployeeInfoController.sendEmailFile(file);
-					//insertFile(file,"FAILURE_");
-					
-					
-				}finally {
-					 
-					insertFile(file,outcome);
-					
+			}
+		};
+		CompletableFuture.allOf(owners.toArray(new CompletableFuture<?>[owners.size()]))
+			.whenComplete((result, error) -> {
+				try {
+					loadStage.submitNow(sync);
+				} catch (RuntimeException e) {
+					failSkills(job, employees, e, clean);
+					done.run();
+					pending.arriveAndDeregister();
 				}
+			});
+	}
+	
+	private void failSkills(FileJob job, List<EmployeeInfo> employees, Exception error, AtomicBoolean clean)
+	{
+		logger.severe("Could not synchronise the skills of " + job.getFile().getName() + ": " + error.toString());
+		clean.set(false);
+		for (EmployeeInfo e : employees) {
+			e.setError("Error inserting skill: " + error.toString());
+		}
+		job.getFailures().addAll(employees);
+	}
+	
+	/**
+	 * Lists the files ready to be loaded with a single directory listing, oldest first, so
+	 * that the newest file of the run wins for an employee found in several files.
+	 * 
+	 * Files modified within the last EmployeeInfo_quietPeriod seconds may still be being
+	 * copied, they are left for the next run.
+	 * 
+	 * @return The files to load, empty if there are none or the folder does not exist
+	 */
+	private File[] listInputFiles()
+	{
+		//logic taken from AIMS_Flight_Interface
+		File inputFolder = new File(System.getProperty("EmployeeInfo_fileLoc"));
+		File[] listed = inputFolder.listFiles(filter);
+		if (listed == null)
+		{
+			logger.severe("Path: " + inputFolder.toString() + " is not a directory or does not exist");
+			return new File[0];
+		}
+		
+		long settled = System.currentTimeMillis() - 1000L * SystemProperties.getLong("EmployeeInfo_quietPeriod", 10L);
+		final Map<File, Long> modified = new HashMap<File, Long>();
+		List<File> ready = new ArrayList<File>();
+		for (File file : listed)
+		{
+			long lastModified = file.lastModified();
+			if (lastModified > settled) {
+				logger.info("File " + file.getName() + " is still changing, leaving it for the next run");
+				continue;
+			}
+			modified.put(file, lastModified);
+			ready.add(file);
+		}
+		// Files dropped within the same second are taken in name order
+		Collections.sort(ready, new Comparator<File>() {
+			public int compare(File a, File b) {
+				int c = Long.compare(modified.get(a), modified.get(b));
+				return c != 0 ? c : a.getName().compareTo(b.getName());
 			}
+		});
+		return ready.toArray(new File[ready.size()]);
+	}
+	
+	private void process(File[] inputFiles) {
+		RunMetrics.startRun();
+		if (retryPolicy != null) {
+			retryPolicy.startRun();
+		}
+		EmployeeFingerprintStore fingerprints = null;
+		WorkerContexts contexts = null;
+		ExecutorService files = null;
+		try 
+		{
+			// Transcodes shared by every worker of the run, written through as new codes are inserted
+			TranscodeCache transcodes = new TranscodeCache();
+			data.loadTranscodes(transcodes);
+			// Bulk mode applies each file as a whole, so files are applied one at a time, oldest first
+			bulkMode = "bulk".equalsIgnoreCase(SystemProperties.getString("EmployeeInfo_loadMode", "batch"));
+			// Existing employees, so new ones are inserted without going through the MERGE
+			EmployeeDirectory employees = null;
+			if (!bulkMode && SystemProperties.getBoolean("EmployeeInfo_employeeDirectory", true)) {
+				employees = new EmployeeDirectory();
+				data.loadEmployeeCodes(employees);
+			}
+			fingerprints = EmployeeFingerprintStore.open();
+			// Contexts keep their connection for the whole run and are leased per chunk
+			contexts = new WorkerContexts(factory, transcodes, employees, limiter);
+			// Only needed when an employee can appear in more than one file
+			EmployeeClaims claims = inputFiles.length > 1 ? new EmployeeClaims() : null;
+			// Departments, skills, status, ... repeat across rows and files of the run
+			StringPool strings = new StringPool();
 			
+			int fileThreads = Math.max(1, Math.min(SystemProperties.getInt("EmployeeInfo_fileThreads", 2), inputFiles.length));
+			if (bulkMode) {
+				logger.info("Loading " + inputFiles.length + " files in bulk mode");
+				fileThreads = 1;
+			}
+			files = Executors.newFixedThreadPool(fileThreads);
+			List<Future<?>> done = new ArrayList<Future<?>>();
+			for (int i = 0; i < inputFiles.length; i++)
+			{
+				final FileJob job = new FileJob(inputFiles[i], i, contexts, fingerprints, claims, strings);
+				done.add(files.submit(new Runnable() {
+					public void run() {
+						processFile(job);
+					}
+				}));
+			}
+			for (Future<?> f : done)
+			{
+				f.get();
+			}
 		}
 		catch(Throwable e)
 		{
 			logger.severe(e.toString());
 		}
+		finally
+		{
+			if (files != null) {
+				files.shutdownNow();
+			}
+			if (contexts != null) {
+				contexts.closeAll();
+			}
+			if (fingerprints != null) {
+				fingerprints.close();
+			}
+			RunMetrics.endRun();
+			if (RunMetrics.getCount("files.processed") > 0) {
+				logger.info("Run summary" + System.lineSeparator() + RunMetrics.report());
+			}
+		}
+	}
+	
+	/**
+	 * Loads the employees of one input file and archives it with its outcome.
+	 * 
+	 * Encrypted files are decrypted while they are parsed, so the plaintext never
+	 * reaches the disk; plain CSV files are read directly.
+	 * 
+	 * @param job The .pgp or .csv file to load, with its own failures and error log
+	 */
+	private void processFile(FileJob job)
+	{
+		File file = job.getFile();
+		String exectued = "OK",outcome = "PROCESSED_";
+		long start = System.nanoTime();
+		logger.info("Checking file " + file.toString());
+		EmployeeInfoController.bindErrors(job.getErrors());
+		try
+		{	
+			String fileName = file.getName(); 
+			InputStream stream;
+			
+			if (fileName.toLowerCase().endsWith(".pgp")) {
+				logger.info("Decrypting file " + file.toString());
+				long decryptStart = System.nanoTime();
+				try {
+					logger.info("keyFile " + PGPEncryption.getEncryptionfile());
+					stream = PGPEncryption.openDecryptedStream(file.getAbsolutePath(), PGPEncryption.getEncryptionfile(), PGPEncryption.getEncryptionpassphrase().toCharArray());
+					// Opening only; the data itself is decrypted while it is read
+					RunMetrics.time("decrypt", decryptStart);
+				}catch(Exception e){
+					EmployeeInfoController.addError(e.toString());
+					outcome = "FAILURE_";
+					throw new Exception("Failed to read file");
+				}
+			} else {
+				stream = new FileInputStream(file);
+			}
+			
+			// A file left half loaded by a restart carries on after its committed rows
+			if (!bulkMode) {
+				job.setCheckpoint(CheckpointJournal.open(file));
+			}
+			
+			// Rows are parsed and handed to the workers one chunk at a time, without a temp copy of the file
+			Reader input = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+			boolean read = loadEmployees(input, job);
+			if (job.isStopped()) {
+				return;
+			}
+			
+			// Failed employees were written to the report as they came, it only needs its final name
+			exectued = job.getFailures().close();
+			
+			if(!read) {
+				outcome = "FAILURE_";
+				throw new Exception("Failed to read file" + (exectued != null ? ". Failed Employees are in File " + exectued : ""));
+			}
+			if(exectued != null) {
+				throw new Exception("Failed Employees are in File " + exectued);
+			}
+		   
+		}
+		catch(Exception e)
+		{
+			e.printStackTrace();
+			logger.severe(e.toString());
+			if (stopping) {
+				// The file is picked up again at the next start, it has not failed
+				job.setStopped(true);
+			} else {
+				EmployeeInfoController.addError(e.toString());
+				EmployeeInfoController.sendEmailFile(file, job.getErrors());
+				RunMetrics.count("files.failed", 1);
+			}
+			//insertFile(file,"FAILURE_");
+			
+			
+		}finally {
+			
+			EmployeeInfoController.unbindErrors();
+			long archiveStart = System.nanoTime();
+			try {
+				job.getFailures().close();
+			} catch (IOException e) {
+				logger.severe(e.toString());
+			}
+			// A file cut short by a shutdown, or that could not be archived, stays in the input
+			// folder with its checkpoint, so the next run skips the rows already done
+			if (!job.isStopped() && insertFile(file,outcome) != null && job.getCheckpoint() != null) {
+				job.getCheckpoint().delete();
+			}
+			RunMetrics.time("archive", archiveStart);
+			RunMetrics.time("file", start);
+			RunMetrics.count("files.processed", 1);
+			RunMetrics.count("rows.failed", job.getFailures().size());
+			
+		}
 	}
 	
 	public void run() 
 	{
 		try {
+			// Idle ticks end here, without a round trip to the database
+			File[] inputFiles = listInputFiles();
+			if (inputFiles.length == 0) {
+				return;
+			}
 			if(data.lockAvailable("I01"))
 			{
 				data.lockTable("I01");
-				process();
+				process(inputFiles);
 				data.unlockTable("I01");
 			}
 		}catch(Exception e) {
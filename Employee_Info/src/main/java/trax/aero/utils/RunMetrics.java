@@ -0,0 +1,166 @@
+package trax.aero.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Timings and counters of the current (or last) I01 run.
+ *
+ * Phases record their durations in a histogram of power-of-two millisecond
+ * buckets, counters and database round trips are plain adders, so recording
+ * never locks. The registry is reset when a run starts; report() is served by
+ * the /metrics endpoint and logged as the run summary.
+ *
+ * Phases: read (reading and decrypting a file), parse, transcodes, upsert,
+ * skills, stage, reconcile, archive and file (a whole file).
+ */
+public class RunMetrics {
+
+	private static final int BUCKETS = 32;
+
+	private static final class Timer {
+		final LongAdder count = new LongAdder();
+		final LongAdder nanos = new LongAdder();
+		final AtomicLong max = new AtomicLong();
+		// Bucket i holds the durations below 2^i ms
+		final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+		Timer() {
+			for (int i = 0; i < BUCKETS; i++) {
+				buckets[i] = new LongAdder();
+			}
+		}
+
+		void record(long duration) {
+			count.increment();
+			nanos.add(duration);
+			long m = max.get();
+			while (duration > m && !max.compareAndSet(m, duration)) {
+				m = max.get();
+			}
+			long millis = duration / 1000000L;
+			int bucket = millis == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis));
+			buckets[bucket].increment();
+		}
+
+		// Upper bound of the bucket holding the given quantile, in ms, at most the maximum
+		long quantile(double q) {
+			long total = count.sum();
+			if (total == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(total * q);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += buckets[i].sum();
+				if (seen >= rank && seen > 0) {
+					return Math.min(1L << i, max.get() / 1000000L);
+				}
+			}
+			return max.get() / 1000000L;
+		}
+	}
+
+	private static final Map<String, Timer> timers = new ConcurrentHashMap<String, Timer>();
+	private static final Map<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+	private static final Map<String, LongAdder> roundTrips = new ConcurrentHashMap<String, LongAdder>();
+	private static final Map<String, LongSupplier> gauges = new ConcurrentHashMap<String, LongSupplier>();
+	private static volatile long started = System.currentTimeMillis();
+	private static volatile long ended = 0;
+
+	private RunMetrics() {
+	}
+
+	/**
+	 * Clears the figures of the previous run.
+	 */
+	public static void startRun() {
+		timers.clear();
+		counters.clear();
+		roundTrips.clear();
+		started = System.currentTimeMillis();
+		ended = 0;
+	}
+
+	public static void endRun() {
+		ended = System.currentTimeMillis();
+	}
+
+	/**
+	 * Records the duration of one occurrence of a phase.
+	 *
+	 * @param phase The phase
+	 * @param start The System.nanoTime() at which it began
+	 */
+	public static void time(String phase, long start) {
+		timers.computeIfAbsent(phase, p -> new Timer()).record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Adds to a counter, such as rows.read, rows.loaded, rows.failed or files.failed.
+	 */
+	public static void count(String counter, long n) {
+		if (n != 0) {
+			counters.computeIfAbsent(counter, c -> new LongAdder()).add(n);
+		}
+	}
+
+	/**
+	 * Counts one database round trip of a kind of statement.
+	 */
+	public static void roundTrip(String statement) {
+		roundTrips.computeIfAbsent(statement, s -> new LongAdder()).increment();
+	}
+
+	/**
+	 * Publishes a live value, such as the current concurrency limit. Gauges outlive runs.
+	 */
+	public static void gauge(String name, LongSupplier value) {
+		gauges.put(name, value);
+	}
+
+	public static long getCount(String counter) {
+		LongAdder adder = counters.get(counter);
+		return adder != null ? adder.sum() : 0;
+	}
+
+	/**
+	 * @return The figures of the current or last run, one "name value" line each
+	 */
+	public static String report() {
+		String newLine = System.lineSeparator();
+		long elapsed = (ended > 0 ? ended : System.currentTimeMillis()) - started;
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("run.running ").append(ended == 0 ? 1 : 0).append(newLine);
+		sb.append("run.elapsed_ms ").append(elapsed).append(newLine);
+		sb.append("run.rows_per_second ").append(elapsed > 0 ? getCount("rows.loaded") * 1000 / elapsed : 0).append(newLine);
+
+		for (Map.Entry<String, LongAdder> c : new TreeMap<String, LongAdder>(counters).entrySet()) {
+			sb.append(c.getKey()).append(' ').append(c.getValue().sum()).append(newLine);
+		}
+		for (Map.Entry<String, LongAdder> r : new TreeMap<String, LongAdder>(roundTrips).entrySet()) {
+			sb.append("db.").append(r.getKey()).append(' ').append(r.getValue().sum()).append(newLine);
+		}
+		for (Map.Entry<String, Timer> t : new TreeMap<String, Timer>(timers).entrySet()) {
+			String name = "phase." + t.getKey();
+			Timer timer = t.getValue();
+			long count = timer.count.sum();
+			sb.append(name).append(".count ").append(count).append(newLine);
+			sb.append(name).append(".total_ms ").append(timer.nanos.sum() / 1000000L).append(newLine);
+			sb.append(name).append(".mean_ms ").append(count > 0 ? timer.nanos.sum() / count / 1000000L : 0).append(newLine);
+			sb.append(name).append(".p50_ms ").append(timer.quantile(0.50)).append(newLine);
+			sb.append(name).append(".p95_ms ").append(timer.quantile(0.95)).append(newLine);
+			sb.append(name).append(".p99_ms ").append(timer.quantile(0.99)).append(newLine);
+			sb.append(name).append(".max_ms ").append(timer.max.get() / 1000000L).append(newLine);
+		}
+		for (Map.Entry<String, LongSupplier> g : new TreeMap<String, LongSupplier>(gauges).entrySet()) {
+			sb.append(g.getKey()).append(' ').append(g.getValue().getAsLong()).append(newLine);
+		}
+		return sb.toString();
+	}
+}
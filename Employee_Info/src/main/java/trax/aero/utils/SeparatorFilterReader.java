@@ -0,0 +1,92 @@
+package trax.aero.utils;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reader that turns the "||" field separator of the HR files into the single
+ * SEPARATOR character while the file is being read, so the CSV parser can
+ * split on it without the whole file being loaded and rewritten first.
+ */
+public class SeparatorFilterReader extends FilterReader {
+
+	// Uncommon character the CSV parser is configured to split on
+	public static final char SEPARATOR = '\u0001';
+
+	private final char[] buf = new char[8192];
+	private int pos = 0;
+	private int limit = 0;
+
+	public SeparatorFilterReader(Reader in) {
+		super(in);
+	}
+
+	private boolean fill() throws IOException {
+		if (pos < limit) {
+			return true;
+		}
+		int n = in.read(buf, 0, buf.length);
+		pos = 0;
+		limit = Math.max(n, 0);
+		return n > 0;
+	}
+
+	@Override
+	public int read() throws IOException {
+		char[] c = new char[1];
+		return read(c, 0, 1) == -1 ? -1 : c[0];
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		int n = 0;
+		while (n < len && fill()) {
+			char c = buf[pos++];
+			// A lone '|' is kept as is, a pair becomes the separator
+			if (c == '|' && fill() && buf[pos] == '|') {
+				pos++;
+				c = SEPARATOR;
+			}
+			cbuf[off + n++] = c;
+		}
+		return n == 0 ? -1 : n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		char[] skipped = new char[(int) Math.min(n, buf.length)];
+		long remaining = n;
+		while (remaining > 0) {
+			int read = read(skipped, 0, (int) Math.min(remaining, skipped.length));
+			if (read == -1) {
+				break;
+			}
+			remaining -= read;
+		}
+		return n - remaining;
+	}
+
+	@Override
+	public boolean ready() throws IOException {
+		return pos < limit || in.ready();
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void mark(int readAheadLimit) throws IOException {
+		throw new IOException("mark() not supported");
+	}
+
+	@Override
+	public void reset() throws IOException {
+		throw new IOException("reset() not supported");
+	}
+}
@@ -0,0 +1,180 @@
+package trax.aero.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import trax.aero.logger.LogManager;
+
+/**
+ * One stage of the load pipeline: a fixed set of long-lived threads fed by a
+ * bounded queue.
+ *
+ * submit() blocks while the queue is full, so a fast producer (the file parser)
+ * is held back to the pace of a slow consumer (the database) instead of
+ * queueing the whole file in memory.
+ *
+ * A stage may instead run every task on its own virtual thread (JDK 21+), with
+ * the semaphore bounding the tasks in flight rather than a thread count. The
+ * virtual-thread API is looked up by reflection, as the interface is built for
+ * Java 8.
+ */
+public class StageExecutor {
+
+	static Logger logger = LogManager.getLogger("EmployeeInfo_I01");
+
+	private final String name;
+	private final ExecutorService executor;
+	private final Semaphore slots;
+	// Tasks queued with submitNow() take their slot once they run
+	private final boolean virtual;
+
+	/**
+	 * @param name The stage name, used for the thread names
+	 * @param threads The number of threads running the stage's tasks
+	 * @param queueSize The number of tasks that may wait for a thread before submit() blocks
+	 */
+	public StageExecutor(final String name, int threads, int queueSize) {
+		this(name, platformPool(name, Math.max(1, threads)), Math.max(1, threads) + Math.max(1, queueSize), false);
+		logger.info("Created " + name + " stage [threads =" + Math.max(1, threads) + ", queue =" + Math.max(1, queueSize) + "]");
+	}
+
+	private StageExecutor(String name, ExecutorService executor, int slots, boolean virtual) {
+		this.name = name;
+		this.executor = executor;
+		this.slots = new Semaphore(slots);
+		this.virtual = virtual;
+	}
+
+	/**
+	 * Creates a stage running each task on a new virtual thread, or a platform
+	 * stage if the JDK has no virtual threads.
+	 *
+	 * @param name The stage name, used for the thread names
+	 * @param inFlight The number of tasks that may run at once, typically the size of the connection pool
+	 * @param threads The number of threads of the fallback platform stage
+	 * @param queueSize The queue size of the fallback platform stage
+	 * @return The stage
+	 */
+	public static StageExecutor virtualOrPlatform(String name, int inFlight, int threads, int queueSize) {
+		ExecutorService executor = virtualPool(name);
+		if (executor == null) {
+			logger.warning("Virtual threads are not available on Java " + System.getProperty("java.version")
+					+ ", the " + name + " stage uses platform threads");
+			return new StageExecutor(name, threads, queueSize);
+		}
+		inFlight = Math.max(1, inFlight);
+		logger.info("Created " + name + " stage on virtual threads [in flight =" + inFlight + "]");
+		return new StageExecutor(name, executor, inFlight, true);
+	}
+
+	private static ExecutorService virtualPool(String name) {
+		try {
+			// Thread.ofVirtual().name(prefix, 1).factory(), then Executors.newThreadPerTaskExecutor(factory)
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			Object virtual = Thread.class.getMethod("ofVirtual").invoke(null);
+			virtual = builder.getMethod("name", String.class, long.class).invoke(virtual, "EmployeeInfo-" + name + "-v", 1L);
+			ThreadFactory factory = (ThreadFactory) builder.getMethod("factory").invoke(virtual);
+			return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+		} catch (Exception e) {
+			// Older JDK, or preview API not enabled
+			return null;
+		}
+	}
+
+	private static ExecutorService platformPool(final String name, int threads) {
+		// The queue itself is unbounded, the semaphore is what bounds it
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "EmployeeInfo-" + name + "-" + count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
+
+	/**
+	 * Queues a task, waiting for room in the queue if the stage is behind.
+	 *
+	 * @param task The task to run
+	 * @throws InterruptedException if interrupted while waiting for room
+	 */
+	public void submit(final Runnable task) throws InterruptedException {
+		slots.acquire();
+		execute(task, true);
+	}
+
+	/**
+	 * Queues a task without waiting for room. Meant for tasks released by the
+	 * completion of another task, which may run on this stage's own threads and
+	 * must not block on its queue. On virtual threads the task still waits for a
+	 * slot before it runs, so it never exceeds the in-flight limit.
+	 *
+	 * @param task The task to run
+	 */
+	public void submitNow(final Runnable task) {
+		execute(task, false);
+	}
+
+	private void execute(final Runnable task, final boolean holdsSlot) {
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					boolean held = holdsSlot;
+					try {
+						if (!held && virtual) {
+							slots.acquire();
+							held = true;
+						}
+						task.run();
+					} catch (Throwable e) {
+						logger.severe(name + " task failed: " + e.toString());
+					} finally {
+						if (held) {
+							slots.release();
+						}
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			if (holdsSlot) {
+				slots.release();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Stops taking tasks and lets the queued and running ones finish. Tasks
+	 * still not done after the timeout are interrupted and dropped.
+	 *
+	 * @param timeoutMillis The time the tasks are given to finish
+	 * @return true if every task finished
+	 */
+	public boolean shutdown(long timeoutMillis) {
+		executor.shutdown();
+		try {
+			if (executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+				return true;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		logger.warning("The " + name + " stage did not finish its tasks in " + timeoutMillis + "ms, dropping them");
+		executor.shutdownNow();
+		return false;
+	}
+
+	public boolean isTerminated() {
+		return executor.isTerminated();
+	}
+}
@@ -0,0 +1,62 @@
+package trax.aero.utils;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Canonicalising pool for the low-cardinality columns of a run (departments,
+ * divisions, positions, skills, status, ...), so that every row holding the same
+ * value shares one String instance.
+ *
+ * The pool is a fixed-size open-addressing table filled with compare-and-set, so
+ * parse threads never lock. Once the probe window of a value is full the value
+ * is returned as is: the pool stays small even if a column turns out not to be
+ * low-cardinality after all.
+ */
+public class StringPool {
+
+	private static final int MAX_PROBES = 8;
+
+	private final AtomicReferenceArray<String> table;
+	private final int mask;
+
+	/**
+	 * @param capacity The number of slots, rounded up to a power of two
+	 */
+	public StringPool(int capacity) {
+		int size = Integer.highestOneBit(Math.max(16, capacity - 1)) << 1;
+		this.table = new AtomicReferenceArray<String>(size);
+		this.mask = size - 1;
+	}
+
+	public StringPool() {
+		this(SystemProperties.getInt("EmployeeInfo_stringPoolSize", 8192));
+	}
+
+	/**
+	 * Returns the pooled instance equal to value, adding value if there is room.
+	 *
+	 * @param value The value read from the file
+	 * @return An equal instance shared by the whole run, or value itself
+	 */
+	public String intern(String value) {
+		if (value == null) {
+			return null;
+		}
+		int h = value.hashCode();
+		h ^= (h >>> 16);
+		for (int i = 0; i < MAX_PROBES; i++) {
+			int slot = (h + i) & mask;
+			String pooled = table.get(slot);
+			if (pooled == null) {
+				if (table.compareAndSet(slot, null, value)) {
+					return value;
+				}
+				pooled = table.get(slot);
+			}
+			if (pooled.equals(value)) {
+				return pooled;
+			}
+		}
+		return value;
+	}
+}
@@ -0,0 +1,69 @@
+package trax.aero.utils;
+
+import java.util.logging.Logger;
+
+import trax.aero.logger.LogManager;
+
+/**
+ * Typed access to the interface's tuning properties, falling back to a default
+ * when the property is missing, empty or malformed.
+ */
+public class SystemProperties {
+
+	static Logger logger = LogManager.getLogger("EmployeeInfo_I01");
+
+	public static int getInt(String name, int defaultValue) {
+		String value = System.getProperty(name);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			logger.warning("Invalid value for " + name + ": " + value + ". Using default " + defaultValue);
+			return defaultValue;
+		}
+	}
+
+	public static long getLong(String name, long defaultValue) {
+		String value = System.getProperty(name);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			logger.warning("Invalid value for " + name + ": " + value + ". Using default " + defaultValue);
+			return defaultValue;
+		}
+	}
+
+	public static double getDouble(String name, double defaultValue) {
+		String value = System.getProperty(name);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			logger.warning("Invalid value for " + name + ": " + value + ". Using default " + defaultValue);
+			return defaultValue;
+		}
+	}
+
+	public static boolean getBoolean(String name, boolean defaultValue) {
+		String value = System.getProperty(name);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		return Boolean.parseBoolean(value.trim());
+	}
+
+	public static String getString(String name, String defaultValue) {
+		String value = System.getProperty(name);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		return value.trim();
+	}
+}
@@ -1,59 +1,108 @@
 package trax.aero.utils;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 import java.util.logging.Logger;
 
-import javax.persistence.EntityManagerFactory;
-import javax.persistence.Persistence;
-
+import trax.aero.controller.EmployeeInfoController;
 import trax.aero.data.EmployeeInfoData;
 import trax.aero.logger.LogManager;
 import trax.aero.pojo.EmployeeInfo;
 
 public class Worker implements Runnable {
 
-    private EmployeeInfoData data = null;
+    private FileJob job = null;
     private static Logger logger = LogManager.getLogger("EmployeeInfo_I01");
     
-    public Worker(EntityManagerFactory factory) {
+    public Worker(FileJob job) {
    
-        data = new EmployeeInfoData();
+        this.job = job;
     }
 
-    private EmployeeInfo input = null;
+    private List<EmployeeInfo> input = null;
     private String executed = "";
+    // Whether rows stopped by a transient error are kept for another attempt instead of failed
+    private boolean retry = false;
+    private List<EmployeeInfo> retries = new ArrayList<EmployeeInfo>();
 
     public void run() {
         setExecuted("OK");
 
+        // Errors raised while loading the chunk belong to its file
+        EmployeeInfoController.bindErrors(job.getErrors());
+        // The context goes back to the pool for the next chunk; RunAble closes it at the end of the run
+        EmployeeInfoData data = job.getContexts().lease();
+        long start = System.nanoTime();
         try {
-            String output = data.insertEmployee(input);
-            if(output == null || !output.equalsIgnoreCase("OK")) {
-                RunAble.employeesFailure.add(input);
+            List<EmployeeInfo> failures = data.upsertEmployees(input, retry ? retries : null);
+            if(!failures.isEmpty()) {
+                job.getFailures().addAll(failures);
+            }
+            RunMetrics.count("rows.loaded", input.size() - failures.size() - retries.size());
+            
+            Set<EmployeeInfo> failed = Collections.newSetFromMap(new IdentityHashMap<EmployeeInfo, Boolean>());
+            failed.addAll(failures);
+            failed.addAll(retries);
+            
+            // Skills of the committed employees are synchronised right away, so the file's skills are never held in memory
+            List<EmployeeInfo> skilled = new ArrayList<EmployeeInfo>();
+            for(EmployeeInfo e : input) {
+                if(!failed.contains(e) && e.getSkill() != null && !e.getSkill().isEmpty()) {
+                    skilled.add(e);
+                }
+            }
+            if(!skilled.isEmpty()) {
+                long skillsStart = System.nanoTime();
+                List<EmployeeInfo> skillFailures = data.syncSkills(skilled);
+                RunMetrics.time("skills", skillsStart);
+                job.getFailures().addAll(skillFailures);
+                failed.addAll(skillFailures);
+            }
+            
+            // Only fully committed employees are fingerprinted, failed ones are retried with the next file
+            EmployeeFingerprintStore fingerprints = job.getFingerprints();
+            if(fingerprints != null) {
+                for(EmployeeInfo e : input) {
+                    if(!failed.contains(e)) {
+                        fingerprints.put(e);
+                    }
+                }
             }
         }
         catch(Exception e) {
             e.printStackTrace();
             logger.severe(e.toString());
-        } finally {
-        
-            try {
-                if(data.getCon() != null && !data.getCon().isClosed()) {
-                    data.getCon().close();
-                }
-            } catch (Exception e) {
-                logger.severe("Error closing connection: " + e.toString());
-            }
+            setExecuted(e.toString());
+        }
+        finally {
+            RunMetrics.time("upsert", start);
+            job.getContexts().release(data);
+            EmployeeInfoController.unbindErrors();
         }
     }
 
-    public EmployeeInfo getInput() {
+    public List<EmployeeInfo> getInput() {
         return input;
     }
 
-    public void setInput(EmployeeInfo inputs) {
+    public void setInput(List<EmployeeInfo> inputs) {
         this.input = inputs;
     }
 
+    public void setRetry(boolean retry) {
+        this.retry = retry;
+    }
+
+    /**
+     * @return The rows stopped by a transient error, when retry is set
+     */
+    public List<EmployeeInfo> getRetries() {
+        return retries;
+    }
+
     public String getExecuted() {
         return executed;
     }
@@ -61,4 +110,4 @@ public class Worker implements Runnable {
     public void setExecuted(String executed) {
         this.executed = executed;
     }
-}
\ No newline at end of file
+}
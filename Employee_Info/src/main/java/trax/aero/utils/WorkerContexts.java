@@ -0,0 +1,94 @@
+package trax.aero.utils;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.persistence.EntityManagerFactory;
+
+import trax.aero.data.EmployeeDirectory;
+import trax.aero.data.EmployeeInfoData;
+import trax.aero.data.TranscodeCache;
+import trax.aero.logger.LogManager;
+
+/**
+ * Pool of long-lived EmployeeInfoData contexts leased to the tasks of a run.
+ *
+ * Every context shares the run's EntityManagerFactory and keeps its own leased
+ * connection and statement cache, so the setup cost is paid once per context
+ * instead of once per chunk. Contexts are leased per task rather than bound to a
+ * thread, so short-lived (virtual) threads reuse them as well; at most as many
+ * contexts are opened as tasks ever ran at once.
+ */
+public class WorkerContexts {
+
+	Logger logger = LogManager.getLogger("EmployeeInfo_I01");
+
+	private final EntityManagerFactory factory;
+	private final TranscodeCache transcodes;
+	private final EmployeeDirectory employees;
+	private final ConcurrencyLimiter limiter;
+	private final Queue<EmployeeInfoData> idle = new ConcurrentLinkedQueue<EmployeeInfoData>();
+	private final Queue<EmployeeInfoData> opened = new ConcurrentLinkedQueue<EmployeeInfoData>();
+	private final AtomicInteger count = new AtomicInteger();
+
+	/**
+	 * @param factory The EntityManagerFactory of the interface
+	 * @param transcodes The transcodes of the run
+	 * @param employees The existing employees of the run, or null to MERGE every row
+	 * @param limiter The adaptive concurrency limit fed by the contexts' statements, or null
+	 */
+	public WorkerContexts(EntityManagerFactory factory, TranscodeCache transcodes, EmployeeDirectory employees,
+			ConcurrencyLimiter limiter) {
+		this.factory = factory;
+		this.transcodes = transcodes;
+		this.employees = employees;
+		this.limiter = limiter;
+	}
+
+	/**
+	 * Takes an idle context, opening a new one if there is none. The caller owns
+	 * it until it hands it back with release().
+	 *
+	 * @return An EmployeeInfoData used by no other task
+	 */
+	public EmployeeInfoData lease() {
+		EmployeeInfoData data = idle.poll();
+		if (data == null) {
+			data = new EmployeeInfoData(factory);
+			data.setTranscodes(transcodes);
+			data.setEmployees(employees);
+			data.setLimiter(limiter);
+			opened.add(data);
+			logger.info("Opened data-access context " + count.incrementAndGet() + " for thread " + Thread.currentThread().getName());
+		}
+		return data;
+	}
+
+	/**
+	 * Returns a leased context to the pool, with no transaction left open.
+	 *
+	 * @param data The context obtained from lease()
+	 */
+	public void release(EmployeeInfoData data) {
+		if (data != null) {
+			idle.add(data);
+		}
+	}
+
+	/**
+	 * Closes every context handed out so far. Must only be called once the
+	 * tasks using them have finished.
+	 */
+	public void closeAll() {
+		EmployeeInfoData data;
+		int closed = 0;
+		idle.clear();
+		while ((data = opened.poll()) != null) {
+			data.close();
+			closed++;
+		}
+		logger.info("Closed " + closed + " data-access contexts");
+	}
+}
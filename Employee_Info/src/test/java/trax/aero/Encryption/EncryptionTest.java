@@ -0,0 +1,85 @@
+package trax.aero.Encryption;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class EncryptionTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	// Larger than the 64K buffer and not a multiple of the AES block
+	private static byte[] data(int length) {
+		byte[] data = new byte[length];
+		new Random(42).nextBytes(data);
+		return data;
+	}
+
+	@Test
+	public void fileRoundTrip() throws Exception {
+		byte[] plain = data(3 * 64 * 1024 + 17);
+		File input = folder.newFile("employees.csv");
+		File encrypted = folder.newFile("employees.enc");
+		File decrypted = folder.newFile("employees.out");
+		Files.write(input.toPath(), plain);
+
+		Encryption.encryptFile(input, encrypted);
+		byte[] cipherText = Files.readAllBytes(encrypted.toPath());
+		assertEquals(0, cipherText.length % 16);
+		assertFalse(Arrays.equals(plain, Arrays.copyOf(cipherText, plain.length)));
+
+		Encryption.decryptFile(encrypted, decrypted);
+		assertArrayEquals(plain, Files.readAllBytes(decrypted.toPath()));
+	}
+
+	@Test
+	public void shortReadsLoseNothing() throws Exception {
+		byte[] plain = data(200000);
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		Encryption.crypto(Cipher.ENCRYPT_MODE, new ByteArrayInputStream(plain), encrypted);
+
+		// Hands out at most 1000 bytes per read
+		InputStream trickle = new ByteArrayInputStream(encrypted.toByteArray()) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				return super.read(b, off, Math.min(len, 1000));
+			}
+		};
+		ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+		Encryption.crypto(Cipher.DECRYPT_MODE, trickle, decrypted);
+		assertArrayEquals(plain, decrypted.toByteArray());
+	}
+
+	@Test
+	public void emptyInput() throws Exception {
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		Encryption.crypto(Cipher.ENCRYPT_MODE, new ByteArrayInputStream(new byte[0]), encrypted);
+		assertEquals(16, encrypted.size());
+		ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+		Encryption.crypto(Cipher.DECRYPT_MODE, new ByteArrayInputStream(encrypted.toByteArray()), decrypted);
+		assertEquals(0, decrypted.size());
+	}
+
+	@Test
+	public void stringRoundTrip() throws Exception {
+		String encrypted = Encryption.cryptoControl("secret password", true);
+		assertFalse("secret password".equals(encrypted));
+		assertEquals("secret password", Encryption.cryptoControl(encrypted, false));
+		assertEquals("", Encryption.cryptoControl(null, true));
+	}
+}
@@ -0,0 +1,64 @@
+package trax.aero.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class EmployeeDirectoryTest {
+
+	private static EmployeeDirectory directory(String... codes) {
+		EmployeeDirectory directory = new EmployeeDirectory();
+		for (String code : codes) {
+			directory.preload(code);
+		}
+		directory.seal();
+		return directory;
+	}
+
+	@Test
+	public void numericAndOtherCodes() {
+		EmployeeDirectory directory = directory("1001", "42", "A-7", "0042");
+		assertTrue(directory.contains("1001"));
+		assertTrue(directory.contains("42"));
+		assertTrue(directory.contains("A-7"));
+		// A leading zero makes it a different code
+		assertTrue(directory.contains("0042"));
+		assertFalse(directory.contains("042"));
+		assertFalse(directory.contains("1002"));
+		assertFalse(directory.contains(null));
+		assertEquals(4, directory.size());
+	}
+
+	@Test
+	public void manyNumericCodes() {
+		EmployeeDirectory directory = new EmployeeDirectory();
+		// Preloaded out of order and past the initial array
+		for (int i = 5000; i > 0; i--) {
+			directory.preload(String.valueOf(i * 3));
+		}
+		directory.seal();
+		assertEquals(5000, directory.size());
+		assertTrue(directory.contains("3"));
+		assertTrue(directory.contains("15000"));
+		assertFalse(directory.contains("4"));
+	}
+
+	@Test
+	public void codesTooLongForALong() {
+		EmployeeDirectory directory = directory("1234567890123456789012");
+		assertTrue(directory.contains("1234567890123456789012"));
+		assertFalse(directory.contains("123456789012345678"));
+	}
+
+	@Test
+	public void insertedCodesAreAddedOnce() {
+		EmployeeDirectory directory = directory("1001");
+		directory.add("1002");
+		directory.add("1001");
+		directory.add("1002");
+		assertTrue(directory.contains("1002"));
+		assertEquals(2, directory.size());
+	}
+}
@@ -0,0 +1,93 @@
+package trax.aero.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CheckpointJournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File input;
+
+	@Before
+	public void setUp() throws IOException {
+		System.setProperty("EmployeeInfo_compFiles", folder.newFolder("comp").getPath());
+		// Every change of progress is written at once
+		System.setProperty("EmployeeInfo_checkpointInterval", "0");
+		input = folder.newFile("employees.csv");
+		write(input, "EMPLOYEE_ID||RELATION_CODE\n");
+	}
+
+	@After
+	public void tearDown() {
+		System.clearProperty("EmployeeInfo_compFiles");
+		System.clearProperty("EmployeeInfo_checkpointInterval");
+	}
+
+	private static void write(File file, String text) throws IOException {
+		try (OutputStream out = new FileOutputStream(file)) {
+			out.write(text.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	public void onlyTheContiguousPrefixCounts() {
+		CheckpointJournal journal = CheckpointJournal.open(input);
+		assertEquals(0, journal.getResumed());
+		// Chunks finish out of order on the load threads
+		journal.done(100, 100);
+		journal.done(300, 100);
+		journal.flush();
+		assertEquals(0, CheckpointJournal.open(input).getResumed());
+
+		journal.done(0, 100);
+		journal.flush();
+		assertEquals(200, CheckpointJournal.open(input).getResumed());
+
+		journal.done(200, 100);
+		journal.flush();
+		assertEquals(400, CheckpointJournal.open(input).getResumed());
+	}
+
+	@Test
+	public void anotherVersionOfTheFileStartsOver() throws IOException {
+		CheckpointJournal journal = CheckpointJournal.open(input);
+		journal.done(0, 50);
+		journal.flush();
+		assertEquals(50, CheckpointJournal.open(input).getResumed());
+
+		write(input, "EMPLOYEE_ID||RELATION_CODE\nE1||1001\n");
+		assertEquals(0, CheckpointJournal.open(input).getResumed());
+	}
+
+	@Test
+	public void touchedFileStartsOver() {
+		CheckpointJournal journal = CheckpointJournal.open(input);
+		journal.done(0, 50);
+		journal.flush();
+		assertTrue(input.setLastModified(input.lastModified() - 60000L));
+		assertEquals(0, CheckpointJournal.open(input).getResumed());
+	}
+
+	@Test
+	public void deletedOnceArchived() {
+		CheckpointJournal journal = CheckpointJournal.open(input);
+		journal.done(0, 50);
+		journal.flush();
+		journal.delete();
+		assertEquals(0, CheckpointJournal.open(input).getResumed());
+	}
+}
@@ -0,0 +1,118 @@
+package trax.aero.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ConcurrencyLimiterTest {
+
+	private static final SQLException DEADLOCK = new SQLException("ORA-00060: deadlock detected while waiting for resource");
+
+	// Fills the limit, then reports a window of statements of the given latency per row
+	private static void window(ConcurrencyLimiter limiter, long nanosPerRow) throws InterruptedException {
+		int limit = limiter.getLimit();
+		for (int i = 0; i < limit; i++) {
+			limiter.acquire();
+		}
+		for (int i = 0; i < Math.max(4, limit); i++) {
+			limiter.sample(nanosPerRow * 100, 100);
+		}
+		for (int i = 0; i < limit; i++) {
+			limiter.release();
+		}
+	}
+
+	@Test
+	public void initialLimitWithinBounds() {
+		assertEquals(4, new ConcurrencyLimiter(10, 1, 4).getLimit());
+		assertEquals(2, new ConcurrencyLimiter(0, 2, 4).getLimit());
+	}
+
+	@Test
+	public void growsWhileUsedAndSteady() throws InterruptedException {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 4);
+		window(limiter, 1000);
+		assertEquals(3, limiter.getLimit());
+		window(limiter, 1000);
+		window(limiter, 1000);
+		window(limiter, 1000);
+		assertEquals(4, limiter.getLimit());
+	}
+
+	@Test
+	public void doesNotGrowWhenNotUsed() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 4);
+		for (int i = 0; i < 8; i++) {
+			limiter.sample(100000, 100);
+		}
+		assertEquals(2, limiter.getLimit());
+	}
+
+	@Test
+	public void backsOffWhenLatencyDegrades() throws InterruptedException {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 8);
+		window(limiter, 1000);
+		int limit = limiter.getLimit();
+		window(limiter, 10000);
+		assertTrue(limiter.getLimit() < limit);
+	}
+
+	@Test
+	public void backsOffOnOverloadOnly() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 1, 8);
+		for (int i = 0; i < 8; i++) {
+			limiter.error(new SQLException("ORA-00001: unique constraint violated"));
+		}
+		assertEquals(8, limiter.getLimit());
+		for (int i = 0; i < 8; i++) {
+			limiter.error(DEADLOCK);
+		}
+		assertEquals(6, limiter.getLimit());
+	}
+
+	@Test
+	public void neverBelowMinimum() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 2, 8);
+		for (int i = 0; i < 40; i++) {
+			limiter.error(DEADLOCK);
+		}
+		assertEquals(2, limiter.getLimit());
+	}
+
+	@Test
+	public void acquireWaitsForRelease() throws InterruptedException {
+		final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+		limiter.acquire();
+		final CountDownLatch acquired = new CountDownLatch(1);
+		Thread waiter = new Thread(new Runnable() {
+			public void run() {
+				try {
+					limiter.acquire();
+					acquired.countDown();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		waiter.start();
+		assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+		limiter.release();
+		assertTrue(acquired.await(5, TimeUnit.SECONDS));
+		assertEquals(1, limiter.getInFlight());
+	}
+
+	@Test
+	public void overloadErrors() {
+		assertTrue(ConcurrencyLimiter.isOverload(DEADLOCK));
+		assertTrue(ConcurrencyLimiter.isOverload(new SQLTimeoutException("timeout")));
+		assertTrue(ConcurrencyLimiter.isOverload(new SQLException("refused", "08006")));
+		assertFalse(ConcurrencyLimiter.isOverload(new SQLException("ORA-01400: cannot insert NULL")));
+	}
+}
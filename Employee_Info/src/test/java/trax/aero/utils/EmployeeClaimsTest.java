@@ -0,0 +1,49 @@
+package trax.aero.utils;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+public class EmployeeClaimsTest {
+
+	@Test
+	public void singleFileIsNeverHeldBack() {
+		EmployeeClaims claims = new EmployeeClaims();
+		assertSame(EmployeeClaims.NONE, claims.claim("1001", 0, new CompletableFuture<Void>()));
+		// Rows of the same file keep running in parallel
+		assertSame(EmployeeClaims.NONE, claims.claim("1001", 0, new CompletableFuture<Void>()));
+		assertSame(EmployeeClaims.NONE, claims.claim("", 0, new CompletableFuture<Void>()));
+		assertSame(EmployeeClaims.NONE, claims.claim(null, 0, new CompletableFuture<Void>()));
+	}
+
+	@Test
+	public void newerFileWaitsForOlderWrite() {
+		EmployeeClaims claims = new EmployeeClaims();
+		CompletableFuture<Void> older = new CompletableFuture<Void>();
+		claims.claim("1001", 0, older);
+		assertSame(older, claims.claim("1001", 1, new CompletableFuture<Void>()));
+	}
+
+	@Test
+	public void olderFileDropsRowOfNewerOwner() {
+		EmployeeClaims claims = new EmployeeClaims();
+		CompletableFuture<Void> newer = new CompletableFuture<Void>();
+		claims.claim("1001", 2, newer);
+		assertNull(claims.claim("1001", 1, new CompletableFuture<Void>()));
+		// The dropped row's skill waits for the owner's write
+		assertSame(newer, claims.owner("1001"));
+		assertFalse(claims.owner("1001").isDone());
+		newer.complete(null);
+		assertTrue(claims.owner("1001").isDone());
+	}
+
+	@Test
+	public void unclaimedEmployeeHasNoOwner() {
+		assertSame(EmployeeClaims.NONE, new EmployeeClaims().owner("1001"));
+	}
+}
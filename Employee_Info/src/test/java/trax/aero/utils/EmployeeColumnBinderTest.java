@@ -0,0 +1,82 @@
+package trax.aero.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import trax.aero.pojo.EmployeeInfo;
+
+public class EmployeeColumnBinderTest {
+
+	@Test
+	public void columnsInAnyOrder() throws Exception {
+		EmployeeColumnBinder binder = EmployeeColumnBinder.forHeader(
+				new String[] { "\uFEFFRelation Code", "department", "EMPLOYEE_ID", "NICKNAME" }, null);
+		EmployeeInfo e = binder.bind(new String[] { "1001", "HR", "E1", "Bob" });
+		assertEquals("1001", e.getRelationCode());
+		assertEquals("HR", e.getDepartment());
+		assertEquals("E1", e.getEmployeeId());
+		// Columns missing from the file are left empty
+		assertNull(e.getSkill());
+	}
+
+	@Test
+	public void correctedSpellingOfSkillDescription() throws Exception {
+		EmployeeColumnBinder binder = EmployeeColumnBinder.forHeader(
+				new String[] { "EMPLOYEE_ID", "RELATION_CODE", "SKILL_DESCRIPTION" }, null);
+		assertEquals("Welding", binder.bind(new String[] { "E1", "1001", "Welding" }).getSkillDescription());
+	}
+
+	@Test
+	public void unknownHeaderReadsStandardLayout() throws Exception {
+		EmployeeColumnBinder binder = EmployeeColumnBinder.forHeader(new String[] { "a", "b", "c" }, null);
+		EmployeeInfo e = binder.bind(new String[] { "E1", "1001", "Jane Doe" });
+		assertEquals("E1", e.getEmployeeId());
+		assertEquals("1001", e.getRelationCode());
+		assertEquals("Jane Doe", e.getFullName());
+	}
+
+	@Test
+	public void shortRowsLeaveTheRestEmpty() throws Exception {
+		EmployeeColumnBinder binder = EmployeeColumnBinder.forHeader(EmployeeColumnBinder.header(), null);
+		EmployeeInfo e = binder.bind(new String[] { "E1", "1001" });
+		assertEquals("1001", e.getRelationCode());
+		assertNull(e.getStatus());
+	}
+
+	@Test
+	public void missingRequiredColumnFailsTheFile() {
+		try {
+			EmployeeColumnBinder.forHeader(new String[] { "EMPLOYEE_ID", "DEPARTMENT" }, null);
+			fail("RELATION_CODE is required");
+		} catch (Exception e) {
+			assertEquals("Missing required column RELATION_CODE in the header", e.getMessage());
+		}
+	}
+
+	@Test
+	public void duplicateColumnFailsTheFile() {
+		try {
+			EmployeeColumnBinder.forHeader(new String[] { "EMPLOYEE_ID", "RELATION_CODE", "relation_code" }, null);
+			fail("RELATION_CODE appears twice");
+		} catch (Exception e) {
+			assertEquals("Column RELATION_CODE appears more than once in the header", e.getMessage());
+		}
+	}
+
+	@Test
+	public void valuesRoundTripInStandardOrder() throws Exception {
+		String[] header = EmployeeColumnBinder.header();
+		assertEquals(24, header.length);
+		String[] row = new String[header.length];
+		for (int i = 0; i < row.length; i++) {
+			row[i] = "v" + i;
+		}
+		EmployeeInfo e = EmployeeColumnBinder.forHeader(header, null).bind(row);
+		assertArrayEquals(row, EmployeeColumnBinder.values(e));
+		assertEquals("", EmployeeColumnBinder.values(new EmployeeInfo())[0]);
+	}
+}
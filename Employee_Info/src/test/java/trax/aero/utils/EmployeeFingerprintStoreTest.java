@@ -0,0 +1,129 @@
+package trax.aero.utils;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import trax.aero.pojo.EmployeeInfo;
+
+public class EmployeeFingerprintStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static EmployeeInfo employee(String relationCode, String department) {
+		EmployeeInfo e = new EmployeeInfo();
+		e.setRelationCode(relationCode);
+		e.setEmployeeId(relationCode);
+		e.setDepartment(department);
+		return e;
+	}
+
+	@Test
+	public void unchangedOnlyOnceCommittedWithTheSameValues() throws IOException {
+		EmployeeFingerprintStore store = new EmployeeFingerprintStore(folder.newFile("fp.idx"));
+		try {
+			EmployeeInfo e = employee("1001", "HR");
+			assertFalse(store.isUnchanged(e));
+			store.put(e);
+			assertTrue(store.isUnchanged(employee("1001", "HR")));
+			assertFalse(store.isUnchanged(employee("1001", "IT")));
+			// Trailing blanks are not a change
+			assertTrue(store.isUnchanged(employee("1001", "HR ")));
+		} finally {
+			store.close();
+		}
+	}
+
+	@Test
+	public void incompleteEmployeesAreNotRecorded() throws IOException {
+		EmployeeFingerprintStore store = new EmployeeFingerprintStore(folder.newFile("fp.idx"));
+		try {
+			EmployeeInfo e = employee("1002", "HR");
+			e.setIncomplete(true);
+			store.put(e);
+			assertFalse(store.isUnchanged(employee("1002", "HR")));
+		} finally {
+			store.close();
+		}
+	}
+
+	@Test
+	public void growsAndSurvivesReopening() throws IOException {
+		File path = folder.newFile("fp.idx");
+		int count = 100000;
+		EmployeeFingerprintStore store = new EmployeeFingerprintStore(path);
+		try {
+			for (int i = 0; i < count; i++) {
+				store.put(employee(String.valueOf(i), "D" + (i % 7)));
+			}
+		} finally {
+			store.close();
+		}
+
+		store = new EmployeeFingerprintStore(path);
+		try {
+			for (int i = 0; i < count; i++) {
+				assertTrue(store.isUnchanged(employee(String.valueOf(i), "D" + (i % 7))));
+			}
+			assertFalse(store.isUnchanged(employee("5", "other")));
+			assertFalse(store.isUnchanged(employee(String.valueOf(count), "D0")));
+		} finally {
+			store.close();
+		}
+	}
+
+	@Test
+	public void invalidIndexStartsOver() throws IOException {
+		File path = folder.newFile("fp.idx");
+		try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+			file.writeBytes("not an index");
+		}
+		EmployeeFingerprintStore store = new EmployeeFingerprintStore(path);
+		try {
+			assertFalse(store.isUnchanged(employee("1003", "HR")));
+			store.put(employee("1003", "HR"));
+			assertTrue(store.isUnchanged(employee("1003", "HR")));
+		} finally {
+			store.close();
+		}
+	}
+
+	@Test(timeout = 60000)
+	public void staleSizeInHeaderIsRebuilt() throws IOException {
+		File path = folder.newFile("fp.idx");
+		EmployeeFingerprintStore store = new EmployeeFingerprintStore(path);
+		try {
+			for (int i = 0; i < 30000; i++) {
+				store.put(employee(String.valueOf(i), "HR"));
+			}
+		} finally {
+			store.close();
+		}
+		// As left by a process stopped between writing slots and the header
+		try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+			file.seek(8);
+			file.writeInt(10);
+		}
+
+		store = new EmployeeFingerprintStore(path);
+		try {
+			// Enough to grow the table
+			for (int i = 30000; i < 75000; i++) {
+				store.put(employee(String.valueOf(i), "HR"));
+			}
+			for (int i = 0; i < 75000; i++) {
+				assertTrue(store.isUnchanged(employee(String.valueOf(i), "HR")));
+			}
+		} finally {
+			store.close();
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package trax.aero.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ErrorCollectorTest {
+
+	@Test
+	public void classifiedByPrefixAndOracleCode() {
+		assertEquals("Error inserting employee", ErrorCollector.classify("Error inserting employee: 1001 bad date"));
+		assertEquals("Error inserting employee (ORA-00001)",
+				ErrorCollector.classify("Error inserting employee: 1001 ORA-00001: unique constraint violated"));
+		assertEquals("No colon at all", ErrorCollector.classify("No colon at all"));
+	}
+
+	@Test
+	public void countsEveryErrorButKeepsFewSamples() {
+		ErrorCollector errors = new ErrorCollector(2, 10);
+		assertTrue(errors.isEmpty());
+		for (int row = 1; row <= 5; row++) {
+			errors.add(row, "Bad date: row " + row);
+		}
+		assertEquals(5, errors.getTotal());
+		assertEquals(Long.valueOf(5), errors.getCounts().get("Bad date"));
+
+		String summary = errors.summary();
+		assertTrue(summary.contains("Bad date (5 occurrences)"));
+		assertTrue(summary.contains("Row 1: Bad date: row 1"));
+		assertTrue(summary.contains("Row 2: Bad date: row 2"));
+		assertFalse(summary.contains("Row 3:"));
+		assertTrue(summary.contains("... and 3 more"));
+	}
+
+	@Test
+	public void mostFrequentClassFirst() {
+		ErrorCollector errors = new ErrorCollector(1, 10);
+		errors.add("Rare: once");
+		errors.add("Common: one");
+		errors.add("Common: two");
+		String summary = errors.summary();
+		assertTrue(summary.indexOf("Common") < summary.indexOf("Rare"));
+	}
+
+	@Test
+	public void newClassesPastTheLimitAreCountedTogether() {
+		ErrorCollector errors = new ErrorCollector(1, 2);
+		errors.add("First: a");
+		errors.add("Second: b");
+		errors.add("Third: c");
+		errors.add("Fourth: d");
+		errors.add("First: e");
+		Map<String, Long> counts = errors.getCounts();
+		assertEquals(3, counts.size());
+		assertEquals(Long.valueOf(2), counts.get("First"));
+		assertEquals(Long.valueOf(2), counts.get("Other errors"));
+	}
+}
@@ -0,0 +1,114 @@
+package trax.aero.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import trax.aero.pojo.EmployeeInfo;
+
+public class FailureWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File comp;
+
+	@Before
+	public void setUp() throws IOException {
+		comp = folder.newFolder("comp");
+		System.setProperty("EmployeeInfo_compFiles", comp.getPath());
+	}
+
+	@After
+	public void tearDown() {
+		System.clearProperty("EmployeeInfo_compFiles");
+		System.clearProperty("EmployeeInfo_failureQueue");
+	}
+
+	private File find(String name) {
+		for (File day : comp.listFiles()) {
+			File file = new File(day, name);
+			if (file.isFile()) {
+				return file;
+			}
+		}
+		return null;
+	}
+
+	private static EmployeeInfo failed(String relationCode, int row, String error) {
+		EmployeeInfo e = new EmployeeInfo();
+		e.setEmployeeId("E" + relationCode);
+		e.setRelationCode(relationCode);
+		e.setRowNumber(row);
+		e.setError(error);
+		return e;
+	}
+
+	@Test
+	public void noFailureNoReport() throws IOException {
+		FailureWriter writer = new FailureWriter("employees.csv");
+		assertTrue(writer.isEmpty());
+		assertNull(writer.close());
+		assertEquals(0, comp.listFiles().length);
+	}
+
+	@Test
+	public void reportKeepsTheInputColumns() throws IOException {
+		FailureWriter writer = new FailureWriter("employees.csv");
+		writer.addAll(Arrays.asList(failed("1001", 2, "Bad date"), failed("1002", 5, "ORA-00001: a|b\nc")));
+		writer.add(failed("1003", 9, null));
+		assertEquals(3, writer.size());
+
+		String report = writer.close();
+		assertTrue(report.startsWith("FAILURE_") && report.endsWith("_employees.csv"));
+		// Closing again returns the same report
+		assertEquals(report, writer.close());
+
+		List<String> lines = Files.readAllLines(find(report).toPath(), StandardCharsets.UTF_8);
+		assertEquals(4, lines.size());
+		String[] header = lines.get(0).split("\\|", -1);
+		assertArrayEquals(EmployeeColumnBinder.header(), header);
+		String[] row = lines.get(1).split("\\|", -1);
+		assertEquals(header.length, row.length);
+		assertEquals("E1001", row[0]);
+		assertEquals("1001", row[1]);
+
+		List<String> errors = Files.readAllLines(find(report + ".errors").toPath(), StandardCharsets.UTF_8);
+		assertEquals(Arrays.asList("ROW_NUMBER|RELATION_CODE|ERROR", "2|1001|Bad date", "5|1002|ORA-00001: a/b c", "9|1003|"),
+				errors);
+		assertNull(find(report + ".part"));
+	}
+
+	@Test(timeout = 10000)
+	public void unwritableReportDoesNotBlockTheLoad() throws IOException {
+		// The dated folder cannot be created under a plain file
+		System.setProperty("EmployeeInfo_compFiles", folder.newFile("not-a-folder").getPath());
+		System.setProperty("EmployeeInfo_failureQueue", "10");
+		FailureWriter writer = new FailureWriter("employees.csv");
+		for (int i = 0; i < 100; i++) {
+			writer.add(failed(String.valueOf(i), i + 2, "Bad date"));
+		}
+		assertEquals(100, writer.size());
+		try {
+			writer.close();
+			fail("The report could not be written");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("employees.csv"));
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package trax.aero.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RetryPolicyTest {
+
+	private static final Runnable NOTHING = new Runnable() {
+		public void run() {
+		}
+	};
+
+	private RetryPolicy policy;
+
+	@Before
+	public void setUp() {
+		System.setProperty("EmployeeInfo_retryAttempts", "3");
+		System.setProperty("EmployeeInfo_retryDelay", "100");
+		System.setProperty("EmployeeInfo_retryMaxDelay", "1000");
+		System.setProperty("EmployeeInfo_retryBudget", "10");
+		policy = new RetryPolicy();
+	}
+
+	@After
+	public void tearDown() {
+		policy.shutdown();
+		System.clearProperty("EmployeeInfo_retryAttempts");
+		System.clearProperty("EmployeeInfo_retryDelay");
+		System.clearProperty("EmployeeInfo_retryMaxDelay");
+		System.clearProperty("EmployeeInfo_retryBudget");
+	}
+
+	@Test
+	public void delayGrowsWithJitterUpToTheMaximum() {
+		for (int i = 0; i < 100; i++) {
+			long first = policy.delay(1);
+			assertTrue(first >= 50 && first <= 100);
+			long third = policy.delay(3);
+			assertTrue(third >= 200 && third <= 400);
+			long capped = policy.delay(20);
+			assertTrue(capped >= 500 && capped <= 1000);
+		}
+	}
+
+	@Test
+	public void attemptsAndBudgetAreLimited() {
+		assertFalse(policy.schedule(4, 1, NOTHING, NOTHING));
+		assertTrue(policy.schedule(1, 6, NOTHING, NOTHING));
+		assertFalse(policy.schedule(1, 5, NOTHING, NOTHING));
+		assertTrue(policy.schedule(2, 4, NOTHING, NOTHING));
+		assertFalse(policy.schedule(1, 1, NOTHING, NOTHING));
+		// A new run gets the whole budget back
+		policy.startRun();
+		assertTrue(policy.schedule(1, 10, NOTHING, NOTHING));
+	}
+
+	@Test
+	public void retryRunsAfterTheDelay() throws InterruptedException {
+		final CountDownLatch ran = new CountDownLatch(1);
+		assertTrue(policy.schedule(1, 1, new Runnable() {
+			public void run() {
+				ran.countDown();
+			}
+		}, NOTHING));
+		assertTrue(ran.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void shutdownDropsWaitingRetries() {
+		System.setProperty("EmployeeInfo_retryDelay", "60000");
+		System.setProperty("EmployeeInfo_retryMaxDelay", "60000");
+		RetryPolicy slow = new RetryPolicy();
+		final AtomicInteger ran = new AtomicInteger();
+		final AtomicInteger dropped = new AtomicInteger();
+		Runnable retry = new Runnable() {
+			public void run() {
+				ran.incrementAndGet();
+			}
+		};
+		Runnable drop = new Runnable() {
+			public void run() {
+				dropped.incrementAndGet();
+			}
+		};
+		assertTrue(slow.schedule(1, 1, retry, drop));
+		assertTrue(slow.schedule(1, 1, retry, drop));
+		slow.shutdown();
+		assertEquals(2, dropped.get());
+		// Scheduled after the shutdown, dropped rather than given up
+		assertTrue(slow.schedule(1, 1, retry, drop));
+		assertEquals(3, dropped.get());
+		assertEquals(0, ran.get());
+	}
+
+	@Test
+	public void transientErrors() {
+		assertTrue(RetryPolicy.isTransient(new SQLException("ORA-00060: deadlock detected while waiting for resource")));
+		assertTrue(RetryPolicy.isTransient(new RuntimeException(new SQLRecoverableException("IO Error"))));
+		assertTrue(RetryPolicy.isTransient(new SQLException("ORA-03113: end-of-file on communication channel")));
+		assertFalse(RetryPolicy.isTransient(new SQLException("ORA-00001: unique constraint violated")));
+		assertFalse(RetryPolicy.isTransient(new IllegalStateException("bad value")));
+	}
+
+	@Test
+	public void lostConnections() {
+		assertTrue(RetryPolicy.isConnectionLost(new SQLRecoverableException("IO Error")));
+		assertTrue(RetryPolicy.isConnectionLost(new SQLException("ORA-17008: Closed Connection")));
+		assertFalse(RetryPolicy.isConnectionLost(new SQLException("ORA-00060: deadlock detected while waiting for resource")));
+	}
+}
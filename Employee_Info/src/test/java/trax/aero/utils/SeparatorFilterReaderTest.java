@@ -0,0 +1,88 @@
+package trax.aero.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class SeparatorFilterReaderTest {
+
+	private static final String S = String.valueOf(SeparatorFilterReader.SEPARATOR);
+
+	private static String filter(Reader in) throws IOException {
+		StringBuilder out = new StringBuilder();
+		try (Reader reader = new SeparatorFilterReader(in)) {
+			char[] buf = new char[7];
+			int n;
+			while ((n = reader.read(buf, 0, buf.length)) != -1) {
+				out.append(buf, 0, n);
+			}
+		}
+		return out.toString();
+	}
+
+	private static String filter(String text) throws IOException {
+		return filter(new StringReader(text));
+	}
+
+	// Hands out one character per read, so every pair spans two fills
+	private static Reader trickle(final String text) {
+		return new Reader() {
+			private int pos = 0;
+
+			@Override
+			public int read(char[] cbuf, int off, int len) {
+				if (pos == text.length()) {
+					return -1;
+				}
+				cbuf[off] = text.charAt(pos++);
+				return 1;
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+	}
+
+	@Test
+	public void replacesPairsOnly() throws IOException {
+		assertEquals("a" + S + "b" + S + S + "c", filter("a||b||||c"));
+		assertEquals("a|b", filter("a|b"));
+		assertEquals("", filter(""));
+	}
+
+	@Test
+	public void oddRunKeepsTrailingBar() throws IOException {
+		// Left to right, as String.replace did before the file was streamed
+		assertEquals("a" + S + "|b", filter("a|||b"));
+		assertEquals("a" + S + S + "|", filter("a|||||"));
+	}
+
+	@Test
+	public void pairAcrossReads() throws IOException {
+		assertEquals("a" + S + "b|c" + S, filter(trickle("a||b|c||")));
+	}
+
+	@Test
+	public void pairAcrossBufferBoundary() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 8191; i++) {
+			text.append('x');
+		}
+		String prefix = text.toString();
+		assertEquals(prefix + S + "y", filter(prefix + "||y"));
+	}
+
+	@Test
+	public void singleCharacterReads() throws IOException {
+		try (Reader reader = new SeparatorFilterReader(new StringReader("||a"))) {
+			assertEquals(SeparatorFilterReader.SEPARATOR, reader.read());
+			assertEquals('a', reader.read());
+			assertEquals(-1, reader.read());
+		}
+	}
+}
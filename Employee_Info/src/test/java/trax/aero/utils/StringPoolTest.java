@@ -0,0 +1,67 @@
+package trax.aero.utils;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import trax.aero.pojo.EmployeeInfo;
+
+public class StringPoolTest {
+
+	@Test
+	public void equalValuesShareOneInstance() {
+		StringPool pool = new StringPool(64);
+		String first = new String("Maintenance");
+		assertSame(first, pool.intern(first));
+		assertSame(first, pool.intern(new String("Maintenance")));
+		assertNull(pool.intern(null));
+	}
+
+	@Test
+	public void fullPoolReturnsValueAsIs() {
+		StringPool pool = new StringPool(16);
+		for (int i = 0; i < 1000; i++) {
+			pool.intern("value" + i);
+		}
+		// Every slot is taken, so a new value is neither added nor matched
+		String late = new String("not pooled");
+		String again = new String("not pooled");
+		assertSame(late, pool.intern(late));
+		assertSame(again, pool.intern(again));
+	}
+
+	@Test
+	public void binderPoolsOnlyLowCardinalityColumns() throws Exception {
+		StringPool pool = new StringPool(64);
+		EmployeeColumnBinder binder = EmployeeColumnBinder.forHeader(
+				new String[] { "EMPLOYEE_ID", "RELATION_CODE", "DEPARTMENT" }, pool);
+		EmployeeInfo a = binder.bind(new String[] { new String("E1"), "1001", new String("HR") });
+		EmployeeInfo b = binder.bind(new String[] { new String("E1"), "1002", new String("HR") });
+		assertSame(a.getDepartment(), b.getDepartment());
+		assertNotSame(a.getEmployeeId(), b.getEmployeeId());
+	}
+
+	@Test
+	public void sharedAcrossThreads() throws InterruptedException {
+		final StringPool pool = new StringPool(64);
+		final String[] seen = new String[8];
+		Thread[] threads = new Thread[seen.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					seen[index] = pool.intern(new String("ACTIVE"));
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		for (String s : seen) {
+			assertSame(seen[0], s);
+		}
+	}
+}
@@ -80,4 +80,45 @@ ALTER TABLE DAILY_SHIFT_PATTERN
 ADD BMM_INTERFACE_DATE DATE;
 
 ALTER TABLE DAILY_SHIFT_PATTERN 
-ADD BMM_INTERFACE_FLAG VARCHAR2(1 CHAR);
\ No newline at end of file
+ADD BMM_INTERFACE_FLAG VARCHAR2(1 CHAR);
+-- --------------------------------------------------------
+-- Table: EMPLOYEE_INFO_STAGE (I01, EmployeeInfo_loadMode=bulk)
+-- --------------------------------------------------------
+
+CREATE GLOBAL TEMPORARY TABLE EMPLOYEE_INFO_STAGE 
+   (	"ROW_NO" NUMBER, 
+	"RELATION_CODE" VARCHAR2(255 CHAR), 
+	"NAME" VARCHAR2(255 CHAR), 
+	"LDAP_USERNAME" VARCHAR2(255 CHAR), 
+	"FIRST_NAME" VARCHAR2(255 CHAR), 
+	"LAST_NAME" VARCHAR2(255 CHAR), 
+	"RELATED_LOCATION" VARCHAR2(255 CHAR), 
+	"POSITION_CODE" VARCHAR2(255 CHAR), 
+	"POSITION" VARCHAR2(255 CHAR), 
+	"DEPARTMENT" VARCHAR2(255 CHAR), 
+	"DEPARTMENT_DESCRIPTION" VARCHAR2(255 CHAR), 
+	"DIVISION" VARCHAR2(255 CHAR), 
+	"DIVISION_DESCRIPTION" VARCHAR2(255 CHAR), 
+	"MAIL_PHONE" VARCHAR2(255 CHAR), 
+	"MAIL_EMAIL" VARCHAR2(255 CHAR), 
+	"DATE_OF_BIRTH" DATE, 
+	"DATE_HIRED" DATE, 
+	"DATE_TERMINATED" DATE, 
+	"COMPANY_NAME" VARCHAR2(255 CHAR), 
+	"COST_CODE" VARCHAR2(255 CHAR), 
+	"SKILL" VARCHAR2(255 CHAR), 
+	"SKILL_DESCRIPTION" VARCHAR2(255 CHAR), 
+	"STATUS" VARCHAR2(20 CHAR)  
+   ) ON COMMIT PRESERVE ROWS;
+
+-- DML error log tables, rows rejected by the bulk MERGE/INSERT are reported in the failure file
+
+BEGIN
+  DBMS_ERRLOG.CREATE_ERROR_LOG('RELATION_MASTER', 'ERR$_RELATION_MASTER');
+END;
+/
+
+BEGIN
+  DBMS_ERRLOG.CREATE_ERROR_LOG('EMPLOYEE_SKILL', 'ERR$_EMPLOYEE_SKILL');
+END;
+/
@@ -63,9 +63,7 @@ public final class PGPEncryption {
 		 
 	        InputStream in = new BufferedInputStream(new FileInputStream(inputFileName));
 
-	        InputStream keyIn = new BufferedInputStream(new FileInputStream(keyFileName));
-	        decryptFile(in, keyIn, passwd, defaultFileName,folder);
-	        keyIn.close();
+	        decryptFile(in, keyFileName, passwd, defaultFileName,folder);
 	        in.close();
 	    }
 
@@ -75,7 +73,7 @@ public final class PGPEncryption {
 	     */
 	    private static void decryptFile(
 	            InputStream in,
-	            InputStream keyIn,
+	            String      keyFileName,
 	            char[]      passwd,
 	            String      defaultFileName,
 	            String folder)
@@ -101,37 +99,19 @@ public final class PGPEncryption {
 	                enc = (PGPEncryptedDataList)pgpF.nextObject();
 	            }
 	           
-	            Collection<PGPSecretKeyRing> colllection = new ArrayList<PGPSecretKeyRing>();
-	            PGPObjectFactory factory = new PGPObjectFactory(PGPUtil.getDecoderStream(keyIn), new JcaKeyFingerprintCalculator());
-	    		for (Iterator iter = factory.iterator(); iter.hasNext();) {
-	    			Object section = iter.next();
-	    			
-
-	    			if (section instanceof PGPSecretKeyRing) {
-	    				colllection.add((PGPSecretKeyRing) section);
-	    			}
-	    		}
-	           
 	            //
-	            // find the secret key
+	            // find the secret key, the key ring is parsed and the key extracted once per key file
 	            //
 	            Iterator                    it = enc.getEncryptedDataObjects();
 	            
 	            PGPPrivateKey               sKey = null;
 	            PGPPublicKeyEncryptedData   pbe = null;
 	            
-	            PGPSecretKeyRingCollection  pgpSec = new PGPSecretKeyRingCollection(
-	            		colllection);
-	            
-	            
-	         
-	            
-	            
 	            while (sKey == null && it.hasNext())
 	            {
 	                pbe = (PGPPublicKeyEncryptedData)it.next();
 
-	                sKey = PGPUtils.findSecretKey(pgpSec, pbe.getKeyID(), passwd);
+	                sKey = PGPKeyCache.findPrivateKey(keyFileName, pbe.getKeyID(), passwd);
 	            }
 
 	            if (sKey == null)
@@ -206,7 +186,6 @@ public final class PGPEncryption {
 	        {
 	        	logger.severe(e.toString());
 	        	in.close();
-	        	keyIn.close();
 	        	throw new Exception("Could not decrypt file ERROR: "+e.toString());
 	        }
 	    }
@@ -220,7 +199,7 @@ public final class PGPEncryption {
 	            throws IOException, NoSuchProviderException, PGPException
 	    {
 	        OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFileName));
-	        PGPPublicKey encKey = PGPUtils.readPublicKey(encKeyFileName);
+	        PGPPublicKey encKey = PGPKeyCache.readPublicKey(encKeyFileName);
 	        encryptFile(out, inputFileName, encKey, armor, withIntegrityCheck);
 	        out.close();
 	    }